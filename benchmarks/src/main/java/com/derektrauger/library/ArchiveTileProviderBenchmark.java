@@ -0,0 +1,120 @@
+package com.derektrauger.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.android.gms.maps.model.Tile;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+* Lookups in a tile archive of a city from zoom 0 to 15, written by TileArchiveWriter from a local
+* server: tiles copied into a Tile, zero copy views of the mapped data, and misses.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArchiveTileProviderBenchmark {
+
+    private static final int TILE_SIZE = 12 * 1024;
+    private static final int ZOOM = 15;
+    private static final int POINT_COUNT = 1024;
+
+    private File file;
+    private ArchiveTileProvider provider;
+    private int[] xs;
+    private int[] ys;
+    private int i;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] data = new byte[TILE_SIZE];
+        new Random(42).nextBytes(data);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                // Distinct tiles, so none are deduplicated
+                final byte[] tile = data.clone();
+                final byte[] path = exchange.getRequestURI().getPath().getBytes("UTF-8");
+                System.arraycopy(path, 0, tile, 0, path.length);
+                exchange.sendResponseHeaders(200, tile.length);
+                final OutputStream body = exchange.getResponseBody();
+                body.write(tile);
+                body.close();
+            }
+        });
+        server.start();
+
+        file = File.createTempFile("archivebench", ".tiles");
+        final double south = 48.80;
+        final double west = 2.25;
+        final double north = 48.92;
+        final double east = 2.42;
+        try {
+            final XYZUrlTileProvider source = new XYZUrlTileProvider(256, 256,
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/{z}/{x}/{y}.png");
+            new TileArchiveWriter(source).write(file, south, west, north, east, 0, ZOOM);
+        } finally {
+            server.stop(0);
+        }
+        provider = new ArchiveTileProvider(file);
+
+        final Random random = new Random(42);
+        final MapUtils.Projection projection = MapUtils.getProjection(ZOOM);
+        xs = new int[POINT_COUNT];
+        ys = new int[POINT_COUNT];
+        for (int p = 0; p < POINT_COUNT; p++) {
+            xs[p] = (int) (projection.LonToX(west + random.nextDouble() * (east - west)) / MapUtils.TILE_SIZE);
+            ys[p] = (int) (projection.LatToY(south + random.nextDouble() * (north - south)) / MapUtils.TILE_SIZE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    private int next() {
+        i = (i + 1) & (POINT_COUNT - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Tile getTile() {
+        final int p = next();
+        return provider.getTile(xs[p], ys[p], ZOOM);
+    }
+
+    @Benchmark
+    public ByteBuffer getTileData() {
+        final int p = next();
+        return provider.getTileData(xs[p], ys[p], ZOOM);
+    }
+
+    @Benchmark
+    public Tile getTileMiss() {
+        final int p = next();
+        return provider.getTile(xs[p] + 1000, ys[p], ZOOM);
+    }
+}
@@ -0,0 +1,87 @@
+package com.derektrauger.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap.CompressFormat;
+
+import com.derektrauger.library.imaging.DiskLruImageCache;
+import com.google.android.gms.maps.model.Tile;
+
+/**
+* Tiles served by CachedTileProvider from its memory and disk tiers, the network is never hit.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CachedTileProviderBenchmark {
+
+    private static final int TILES = 16; // per side
+    private static final int TILE_SIZE = 12 * 1024;
+
+    private File directory;
+    private DiskLruImageCache cache;
+    private CachedTileProvider memoryProvider;
+    private CachedTileProvider diskProvider;
+    private int i;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("tilebench", "");
+        directory.delete();
+        cache = new DiskLruImageCache(directory, 64 * 1024 * 1024, CompressFormat.PNG, 70);
+
+        final byte[] data = new byte[TILE_SIZE];
+        new Random(42).nextBytes(data);
+        for (int x = 0; x < TILES; x++) {
+            for (int y = 0; y < TILES; y++) {
+                CachedTileProvider.putEntry(cache, CachedTileProvider.getKey(x, y, 14), data, System.currentTimeMillis());
+            }
+        }
+
+        // Unroutable, a miss would fail the benchmark rather than measure the network
+        final XYZUrlTileProvider urlProvider = new XYZUrlTileProvider(256, 256, "http://0.0.0.0:1/{z}/{x}/{y}.png");
+        memoryProvider = new CachedTileProvider(urlProvider, cache, CachedTileProvider.NO_MAX_AGE, 8 * 1024 * 1024);
+        // Tiles larger than the memory tier are never kept in it
+        diskProvider = new CachedTileProvider(urlProvider, cache, CachedTileProvider.NO_MAX_AGE, 1);
+        for (int x = 0; x < TILES; x++) {
+            for (int y = 0; y < TILES; y++) {
+                memoryProvider.getTile(x, y, 14);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clearCache();
+    }
+
+    @Benchmark
+    public Tile memoryHit() {
+        i = (i + 1) & (TILES * TILES - 1);
+        return memoryProvider.getTile(i / TILES, i % TILES, 14);
+    }
+
+    @Benchmark
+    public Tile diskHit() {
+        i = (i + 1) & (TILES * TILES - 1);
+        return diskProvider.getTile(i / TILES, i % TILES, 14);
+    }
+}
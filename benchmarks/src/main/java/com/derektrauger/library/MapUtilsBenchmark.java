@@ -0,0 +1,157 @@
+package com.derektrauger.library;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.PointF;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+* Single point projections, as called once per track point or marker, the batch projections of
+* MapUtils.Projection, reported per point, and the tile range computations.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapUtilsBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+    private static final int ZOOM = 15;
+
+    private double[] lats;
+    private double[] lons;
+    private PointF[] northingEastings;
+    private MapUtils.Projection projection;
+    private double[] xs;
+    private double[] ys;
+    private int[] tileXs;
+    private int[] tileYs;
+    private double[] worldXs;
+    private double[] worldYs;
+    private double[] outLats;
+    private double[] outLons;
+    private final int[] range = new int[4];
+    private final MapUtils.TileVisitor visitor = new MapUtils.TileVisitor() {
+        public boolean VisitTile(int x, int y, int zoom) {
+            visited += x ^ y;
+            return true;
+        }
+    };
+    private int visited;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        lats = new double[POINT_COUNT];
+        lons = new double[POINT_COUNT];
+        northingEastings = new PointF[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            lats[i] = 40.0 + i * 0.0005;
+            lons[i] = -105.0 + i * 0.0007;
+            northingEastings[i] = MapUtils.LatLonToNorthingEasting(lats[i], lons[i]);
+        }
+        projection = MapUtils.getProjection(ZOOM);
+        xs = new double[POINT_COUNT];
+        ys = new double[POINT_COUNT];
+        tileXs = new int[POINT_COUNT];
+        tileYs = new int[POINT_COUNT];
+        worldXs = new double[POINT_COUNT];
+        worldYs = new double[POINT_COUNT];
+        projection.LatLonToXY(lats, lons, worldXs, worldYs, POINT_COUNT);
+        outLats = new double[POINT_COUNT];
+        outLons = new double[POINT_COUNT];
+    }
+
+    private int next() {
+        index = (index + 1) & (POINT_COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public PointF latLonToXY() {
+        final int i = next();
+        return MapUtils.LatLonToXY(lats[i], lons[i], ZOOM);
+    }
+
+    @Benchmark
+    public LatLng xyToLatLon() {
+        final int i = next();
+        return MapUtils.XYToLatLon(lats[i] * 1000, lons[i] * -1000, ZOOM);
+    }
+
+    @Benchmark
+    public PointF latLonToTileXY() {
+        final int i = next();
+        return MapUtils.LatLonToTileXY(lats[i], lons[i], ZOOM);
+    }
+
+    @Benchmark
+    public PointF latLonToNorthingEasting() {
+        final int i = next();
+        return MapUtils.LatLonToNorthingEasting(lats[i], lons[i]);
+    }
+
+    @Benchmark
+    public LatLng northingEastingToLatLon() {
+        return MapUtils.NorthingEastingToLatLon(northingEastings[next()]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public double[] batchLatLonToXY() {
+        projection.LatLonToXY(lats, lons, xs, ys, POINT_COUNT);
+        return xs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public int[] batchLatLonToTileXY() {
+        projection.LatLonToTileXY(lats, lons, tileXs, tileYs, POINT_COUNT);
+        return tileXs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public double[] batchXYToLatLon() {
+        projection.XYToLatLon(worldXs, worldYs, outLats, outLons, POINT_COUNT);
+        return outLats;
+    }
+
+    @Benchmark
+    public int[] latLonBoundsToTileRange() {
+        final int i = next();
+        return MapUtils.LatLonBoundsToTileRange(lats[i], lons[i], lats[i] + 0.05, lons[i] + 0.08, ZOOM, range);
+    }
+
+    @Benchmark
+    public long tileCountZoom0To21() {
+        final int i = next();
+        return MapUtils.GetTileCount(lats[i], lons[i], lats[i] + 0.05, lons[i] + 0.08, 0, 21);
+    }
+
+    // A 1080x1920 viewport of 256px tiles
+    @Benchmark
+    public int forEachTileSpiral() {
+        range[MapUtils.RANGE_MIN_X] = 1000;
+        range[MapUtils.RANGE_MIN_Y] = 2000;
+        range[MapUtils.RANGE_MAX_X] = 1004;
+        range[MapUtils.RANGE_MAX_Y] = 2008;
+        MapUtils.ForEachTileSpiral(range, ZOOM, visitor);
+        return visited;
+    }
+}
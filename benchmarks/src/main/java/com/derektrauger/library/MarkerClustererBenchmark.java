@@ -0,0 +1,83 @@
+package com.derektrauger.library;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* 50000 markers, half of them around a city and half spread over the world: the points and
+* clusters of a phone sized viewport over the city, the clusters of the whole world, and one
+* incremental add and remove.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MarkerClustererBenchmark {
+
+    private static final int POINT_COUNT = 50000;
+    private static final double CENTER_LAT = 48.8566;
+    private static final double CENTER_LON = 2.3522;
+
+    private MarkerClusterer clusterer;
+    private int visited;
+    private final SpatialIndex.PointVisitor pointVisitor = new SpatialIndex.PointVisitor() {
+        public boolean visitPoint(int id) {
+            visited += id;
+            return true;
+        }
+    };
+    private final MarkerClusterer.ClusterVisitor clusterVisitor = new MarkerClusterer.ClusterVisitor() {
+        public boolean visitCluster(double lat, double lon, int count, int point) {
+            visited += count;
+            return true;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        clusterer = new MarkerClusterer(new SpatialIndex(14), 0, MarkerClusterer.DEFAULT_MAX_ZOOM, MarkerClusterer.DEFAULT_CELL_SIZE);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            if (i % 2 == 0) {
+                clusterer.add(CENTER_LAT + random.nextGaussian() * 0.05, CENTER_LON + random.nextGaussian() * 0.08);
+            } else {
+                clusterer.add(-70 + random.nextDouble() * 140, -180 + random.nextDouble() * 360);
+            }
+        }
+    }
+
+    // About 1080x1920px at zoom 15
+    @Benchmark
+    public int queryViewport() {
+        return clusterer.getIndex().query(CENTER_LAT - 0.01, CENTER_LON - 0.01, CENTER_LAT + 0.01, CENTER_LON + 0.01, pointVisitor);
+    }
+
+    // The whole city at zoom 11
+    @Benchmark
+    public int clustersViewport() {
+        return clusterer.getClusters(11, CENTER_LAT - 0.15, CENTER_LON - 0.2, CENTER_LAT + 0.15, CENTER_LON + 0.2, clusterVisitor);
+    }
+
+    @Benchmark
+    public int clustersWorld() {
+        return clusterer.getClusters(2, -85, -180, 85, 180, clusterVisitor);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        return clusterer.remove(clusterer.add(CENTER_LAT, CENTER_LON));
+    }
+}
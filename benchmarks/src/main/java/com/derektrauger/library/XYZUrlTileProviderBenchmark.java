@@ -0,0 +1,64 @@
+package com.derektrauger.library;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+* Tile URL construction, called by Google Maps for every tile it shows. buildUrl() leaves out the
+* URL parsing that getTileUrl() cannot avoid.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XYZUrlTileProviderBenchmark {
+
+    private XYZUrlTileProvider provider;
+    private XYZUrlTileProvider subdomainProvider;
+    private XYZUrlTileProvider quadKeyProvider;
+    private int x;
+
+    @Setup
+    public void setUp() {
+        provider = new XYZUrlTileProvider(256, 256, "http://tile.example.com/{z}/{x}/{y}.png");
+        subdomainProvider = new XYZUrlTileProvider(256, 256, "http://{s}.tile.example.com/{z}/{x}/{-y}.png");
+        quadKeyProvider = new XYZUrlTileProvider(256, 256, "http://tile.example.com/tiles/{q}.jpeg");
+    }
+
+    @Benchmark
+    public URL getTileUrl() {
+        x = (x + 1) & 1023;
+        return provider.getTileUrl(3400 + x, 6200 + (x >> 3), 14);
+    }
+
+    @Benchmark
+    public String buildUrl() {
+        x = (x + 1) & 1023;
+        return provider.buildUrl(3400 + x, 6200 + (x >> 3), 14);
+    }
+
+    @Benchmark
+    public URL getTileUrlSubdomain() {
+        x = (x + 1) & 1023;
+        return subdomainProvider.getTileUrl(3400 + x, 6200 + (x >> 3), 14);
+    }
+
+    @Benchmark
+    public URL getTileUrlQuadKey() {
+        x = (x + 1) & 1023;
+        return quadKeyProvider.getTileUrl(3400 + x, 6200 + (x >> 3), 14);
+    }
+}
@@ -0,0 +1,118 @@
+package com.derektrauger.library.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+* Compares two JMH CSV result files (-rf csv) and prints the change of every benchmark present in
+* both. Changes beyond the threshold in the slower direction are flagged as regressions and make
+* the exit code non zero, so the comparison can gate a build.
+*
+* Usage: BaselineComparison baseline.csv results.csv [thresholdPercent]
+*/
+public class BaselineComparison {
+
+    private static final double DEFAULT_THRESHOLD = 10.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison baseline.csv results.csv [thresholdPercent]");
+            System.exit(2);
+        }
+
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        final Map<String, Result> baseline = read(args[0]);
+        final Map<String, Result> current = read(args[1]);
+        int regressions = 0;
+
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result before = baseline.get(entry.getKey());
+            final Result after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format("%-90s %14.3f %-8s (new)", entry.getKey(), after.score, after.unit));
+                continue;
+            }
+
+            final double change = (after.score - before.score) / before.score * 100.0;
+            // Throughput modes are better when higher, time modes when lower
+            final boolean slower = after.isThroughput() ? change < -threshold : change > threshold;
+            if (slower) {
+                regressions++;
+            }
+            System.out.println(String.format("%-90s %14.3f -> %14.3f %-8s %+7.1f%%%s", entry.getKey(), before.score,
+                    after.score, after.unit, change, slower ? "  REGRESSION" : ""));
+        }
+
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static Map<String, Result> read(String path) throws IOException {
+        final Map<String, Result> results = new LinkedHashMap<String, Result>();
+        final BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            final List<String> header = split(reader.readLine());
+            final int benchmark = header.indexOf("Benchmark");
+            final int mode = header.indexOf("Mode");
+            final int threads = header.indexOf("Threads");
+            final int score = header.indexOf("Score");
+            final int unit = header.indexOf("Unit");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final List<String> columns = split(line);
+                final StringBuilder key = new StringBuilder(columns.get(benchmark));
+                key.append(" [").append(columns.get(mode)).append(", t=").append(columns.get(threads));
+                // Param columns follow the fixed ones
+                for (int i = unit + 1; i < columns.size(); i++) {
+                    key.append(", ").append(header.get(i)).append('=').append(columns.get(i));
+                }
+                key.append(']');
+
+                final Result result = new Result(Double.parseDouble(columns.get(score)), columns.get(unit));
+                results.put(key.toString(), result);
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    private static List<String> split(String line) {
+        final List<String> columns = new ArrayList<String>();
+        final StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static final class Result {
+        private final double score;
+        private final String unit;
+
+        private Result(double score, String unit) {
+            this.score = score;
+            this.unit = unit;
+        }
+
+        private boolean isThroughput() {
+            return unit.endsWith("/s") || unit.endsWith("/ms") || unit.endsWith("/us") || unit.endsWith("/ns");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.derektrauger.library.imaging;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.derektrauger.library.Utils;
+
+/**
+* Cache key derivation, paid on every memory miss and every disk cache access.
+* Lives in the imaging package to reach the package-private ImageManager.getDiskCacheKey.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheKeyBenchmark {
+
+    private static final int URL_COUNT = 1024;
+
+    private String[] urls;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        urls = new String[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            urls[i] = "http://images.example.com/feed/" + (i * 7919) + "/photo_" + i + ".jpg?w=640&h=480";
+        }
+    }
+
+    private String nextUrl() {
+        index = (index + 1) & (URL_COUNT - 1);
+        return urls[index];
+    }
+
+    @Benchmark
+    public String md5() {
+        return Utils.getMD5(nextUrl());
+    }
+
+    @Benchmark
+    public String diskCacheKey() {
+        return ImageManager.getDiskCacheKey(nextUrl());
+    }
+}
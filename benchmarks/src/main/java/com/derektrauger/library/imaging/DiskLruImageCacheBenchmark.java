@@ -0,0 +1,95 @@
+package com.derektrauger.library.imaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap.CompressFormat;
+
+/**
+* Throughput of the disk cache operations on raw entries, shared by 1 and 4 threads.
+* Bitmap encoding and decoding need the native framework and are not covered.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class DiskLruImageCacheBenchmark {
+
+    private static final int KEY_COUNT = 512;
+    private static final int ENTRY_SIZE = 16 * 1024;
+    private static final int CACHE_SIZE = 64 * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        DiskLruImageCache cache;
+        String[] keys;
+        byte[] entry;
+        File directory;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = File.createTempFile("disklrubench", "");
+            directory.delete();
+            cache = new DiskLruImageCache(directory, CACHE_SIZE, CompressFormat.PNG, 70);
+
+            entry = new byte[ENTRY_SIZE];
+            new Random(42).nextBytes(entry);
+
+            keys = new String[KEY_COUNT];
+            for (int i = 0; i < KEY_COUNT; i++) {
+                keys[i] = ImageManager.getDiskCacheKey("http://images.example.com/" + i + ".jpg");
+                cache.put(keys[i], new ByteArrayInputStream(entry));
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            cache.clearCache();
+        }
+
+        String randomKey() {
+            return keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+        }
+    }
+
+    @Benchmark
+    public boolean put(CacheState state) {
+        return state.cache.put(state.randomKey(), new ByteArrayInputStream(state.entry));
+    }
+
+    @Benchmark
+    public byte[] get(CacheState state) {
+        return state.cache.getBytes(state.randomKey());
+    }
+
+    @Benchmark
+    public boolean containsKey(CacheState state) {
+        return state.cache.containsKey(state.randomKey());
+    }
+
+    @Threads(1)
+    public static class OneThread extends DiskLruImageCacheBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends DiskLruImageCacheBenchmark {
+    }
+}
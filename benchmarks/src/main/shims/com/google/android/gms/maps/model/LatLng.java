@@ -0,0 +1,15 @@
+package com.google.android.gms.maps.model;
+
+/**
+* Benchmark shim for the Google Play services class of the same name.
+*/
+public final class LatLng {
+
+    public final double latitude;
+    public final double longitude;
+
+    public LatLng(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -0,0 +1,17 @@
+package com.google.android.gms.maps.model;
+
+/**
+* Benchmark shim for the Google Play services class of the same name.
+*/
+public final class Tile {
+
+    public final int width;
+    public final int height;
+    public final byte[] data;
+
+    public Tile(int width, int height, byte[] data) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+}
@@ -0,0 +1,11 @@
+package com.google.android.gms.maps.model;
+
+/**
+* Benchmark shim for the Google Play services interface of the same name.
+*/
+public interface TileProvider {
+
+    Tile NO_TILE = new Tile(-1, -1, null);
+
+    Tile getTile(int x, int y, int zoom);
+}
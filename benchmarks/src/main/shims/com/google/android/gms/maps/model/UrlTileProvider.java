@@ -0,0 +1,24 @@
+package com.google.android.gms.maps.model;
+
+import java.net.URL;
+
+/**
+* Benchmark shim for the Google Play services class of the same name. Only the URL building
+* contract is provided, fetching tiles is left to Google Maps.
+*/
+public abstract class UrlTileProvider implements TileProvider {
+
+    private final int width;
+    private final int height;
+
+    public UrlTileProvider(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public abstract URL getTileUrl(int x, int y, int zoom);
+
+    public final Tile getTile(int x, int y, int zoom) {
+        throw new UnsupportedOperationException("Tile fetching is not available outside Google Maps (" + width + "x" + height + ")");
+    }
+}
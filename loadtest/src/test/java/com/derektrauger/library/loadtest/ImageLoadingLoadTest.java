@@ -0,0 +1,288 @@
+package com.derektrauger.library.loadtest;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import com.derektrauger.library.controls.ObservableScrollView;
+import com.derektrauger.library.controls.ScrollStateTracker;
+import com.derektrauger.library.imaging.DiskLruImageCache;
+import com.derektrauger.library.imaging.ImageManager;
+import com.derektrauger.library.imaging.ImageManager.ImageManagerCallback;
+import com.derektrauger.library.imaging.ImageManager.ImageManagerOptions;
+import com.derektrauger.library.imaging.ImageManager.PrefetchOptions;
+import com.derektrauger.library.imaging.PrefetchGroup;
+
+/**
+* Replays a scroll trace over a list of image rows through ImageManager, the way a list adapter
+* drives it: rows scrolling into view bind a recycled ImageView and call loadImage, rows leaving
+* release theirs. Frames run in real time against the embedded ImageServer, the main looper and
+* its clock are advanced by the trace so handlers, pause on fling and deliveries behave as on a
+* device.
+*/
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE)
+public class ImageLoadingLoadTest {
+
+    // Without new displays or requests for this long after the trace the pipeline is drained,
+    // the remaining rows failed
+    private static final long QUIET_PERIOD_MS = 1000;
+
+    private LoadTestConfig config;
+    private ImageServer server;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new LoadTestConfig();
+        server = new ImageServer(config);
+        server.warmUp(config.rowCount);
+        server.start();
+        cacheDir = File.createTempFile("loadtest", "");
+        if (!cacheDir.delete() || !cacheDir.mkdir()) {
+            throw new IllegalStateException("Cannot create " + cacheDir);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        deleteRecursively(cacheDir);
+    }
+
+    @Test
+    public void scrollImageList() throws Exception {
+        final Application application = RuntimeEnvironment.getApplication();
+        final ScrollTrace trace = config.traceFile != null
+                ? ScrollTrace.load(config.traceFile)
+                : ScrollTrace.generate(config.seed, config.traceDurationMs,
+                        config.rowCount * config.rowHeight - config.viewportHeight);
+
+        final DiskLruImageCache diskCache = new DiskLruImageCache(cacheDir, config.diskCacheSize, Bitmap.CompressFormat.JPEG, 70);
+        final ImageManager imageManager = new ImageManager(diskCache, application);
+        final ScrollStateTracker tracker = new ScrollStateTracker(imageManager);
+        final LoadTestReport report = new LoadTestReport(config);
+        final Rows rows = new Rows(application, imageManager, report);
+        imageManager.setCallback(rows);
+
+        // Shadows.shadowOf() overloads reference framework classes newer than the compile time API
+        final ShadowLooper mainLooper = Shadow.extract(Looper.getMainLooper());
+        final long start = System.nanoTime();
+        int first = -1;
+        int last = -1;
+        int lastOffset = -1;
+        long lastTime = 0;
+        PrefetchGroup prefetchGroup = null;
+        int prefetchedUpTo = -1;
+
+        for (int frame = 0; frame < trace.size(); frame++) {
+            sleepUntil(start, trace.getTime(frame));
+
+            final int offset = trace.getOffset(frame);
+            if (config.pauseOnFling && lastOffset >= 0 && offset != lastOffset) {
+                // Scroll views only report actual changes
+                tracker.onScrollChanged((ObservableScrollView) null, 0, offset, 0, lastOffset);
+            }
+
+            final int newFirst = Math.max(0, offset / config.rowHeight);
+            final int newLast = Math.min(config.rowCount - 1, (offset + config.viewportHeight - 1) / config.rowHeight);
+            if (newFirst != first || newLast != last) {
+                rows.setVisibleRange(newFirst, newLast);
+                if (config.publishVisibleRange) {
+                    imageManager.onVisibleRangeChanged(newFirst - config.lookaheadRows, newLast + config.lookaheadRows);
+                }
+
+                if (config.prefetchRows > 0) {
+                    final boolean scrollingUp = newFirst < first;
+                    if (scrollingUp && prefetchGroup != null) {
+                        prefetchGroup.cancel();
+                        prefetchGroup = null;
+                        prefetchedUpTo = newLast;
+                    } else if (!scrollingUp && newLast + config.prefetchRows / 2 > prefetchedUpTo) {
+                        // Prefetch the next rows in batches of half the window, not a row per frame
+                        final List<String> urls = new ArrayList<String>();
+                        final int end = Math.min(config.rowCount - 1, newLast + config.prefetchRows);
+                        for (int row = Math.max(prefetchedUpTo + 1, newLast + 1); row <= end; row++) {
+                            urls.add(server.getUrl(row));
+                        }
+                        prefetchGroup = imageManager.prefetch(urls, new PrefetchOptions(config.requestedWidth, config.requestedHeight));
+                        prefetchedUpTo = end;
+                    }
+                }
+
+                first = newFirst;
+                last = newLast;
+            }
+            lastOffset = offset;
+
+            mainLooper.idleFor(Duration.ofMillis(trace.getTime(frame) - lastTime));
+            lastTime = trace.getTime(frame);
+            report.onFrame(ImageManager.getMetricsSnapshot().getResidentBitmapBytes(), imageManager.isPaused());
+        }
+
+        // Let the visible rows finish, as the user would after the last touch
+        long quietSince = System.nanoTime();
+        int lastRequests = server.getRequestCount();
+        int lastDisplayed = report.getDisplayed();
+        final long drainStart = System.nanoTime();
+        while (rows.getUndisplayedCount() > 0
+                && (System.nanoTime() - quietSince) / 1000000L < QUIET_PERIOD_MS + config.latencyMs
+                && (System.nanoTime() - drainStart) / 1000000L < config.drainTimeoutMs) {
+            Thread.sleep(ScrollTrace.FRAME_MS);
+            mainLooper.idleFor(Duration.ofMillis(ScrollTrace.FRAME_MS));
+            report.onFrame(ImageManager.getMetricsSnapshot().getResidentBitmapBytes(), imageManager.isPaused());
+            if (server.getRequestCount() != lastRequests || report.getDisplayed() != lastDisplayed) {
+                lastRequests = server.getRequestCount();
+                lastDisplayed = report.getDisplayed();
+                quietSince = System.nanoTime();
+            }
+        }
+
+        report.finish(server, ImageManager.getMetricsSnapshot(), rows.getUndisplayedCount(),
+                (System.nanoTime() - start) / 1000000L);
+        System.out.println(report.toText());
+        report.write();
+
+        assertTrue("No image was displayed", report.getDisplayed() > 0);
+    }
+
+    /**
+    * The list: a pool of recycled ImageViews bound to the visible rows.
+    */
+    private final class Rows implements ImageManagerCallback {
+        private final Application application;
+        private final ImageManager imageManager;
+        private final LoadTestReport report;
+        private final ArrayDeque<ImageView> recycledViews = new ArrayDeque<ImageView>();
+        private final Map<ImageView, Binding> bindings = new HashMap<ImageView, Binding>();
+        private final ImageView[] rowViews;
+        private int first = -1;
+        private int last = -2;
+
+        private Rows(Application application, ImageManager imageManager, LoadTestReport report) {
+            this.application = application;
+            this.imageManager = imageManager;
+            this.report = report;
+            this.rowViews = new ImageView[config.rowCount];
+        }
+
+        void setVisibleRange(int newFirst, int newLast) {
+            // Release before binding so the rows entering reuse the views of the rows leaving
+            for (int row = first; row <= last; row++) {
+                if (row < newFirst || row > newLast) {
+                    release(row);
+                }
+            }
+            for (int row = newFirst; row <= newLast; row++) {
+                if (row < first || row > last) {
+                    bind(row);
+                }
+            }
+            first = newFirst;
+            last = newLast;
+        }
+
+        private void bind(int row) {
+            ImageView imageView = recycledViews.poll();
+            if (imageView == null) {
+                imageView = new ImageView(application);
+            }
+            rowViews[row] = imageView;
+
+            final Binding binding = new Binding(row, System.nanoTime());
+            bindings.put(imageView, binding);
+            report.onBind();
+
+            final ImageManagerOptions options = new ImageManagerOptions(config.requestedWidth, config.requestedHeight);
+            options.position = row;
+            options.fadeIn = false;
+            imageManager.loadImage(server.getUrl(row), imageView, options);
+        }
+
+        private void release(int row) {
+            final ImageView imageView = rowViews[row];
+            rowViews[row] = null;
+            final Binding binding = bindings.remove(imageView);
+            if (binding != null && !binding.displayed) {
+                report.onAbandoned();
+            }
+            recycledViews.push(imageView);
+        }
+
+        int getUndisplayedCount() {
+            int count = 0;
+            for (Binding binding : bindings.values()) {
+                if (!binding.displayed) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void onImageLoaded(ImageView imageView) {
+            final Binding binding = bindings.get(imageView);
+            if (binding != null && !binding.displayed) {
+                binding.displayed = true;
+                report.onDisplayed(System.nanoTime() - binding.bindNanos);
+            }
+        }
+
+        @Override
+        public void onImageDownloaded(String urlString) {
+        }
+
+        @Override
+        public void onNullBitmap() {
+        }
+    }
+
+    private static final class Binding {
+        final int row;
+        final long bindNanos;
+        boolean displayed;
+
+        Binding(int row, long bindNanos) {
+            this.row = row;
+            this.bindNanos = bindNanos;
+        }
+    }
+
+    private static void sleepUntil(long startNanos, long offsetMs) throws InterruptedException {
+        final long remaining = offsetMs - (System.nanoTime() - startNanos) / 1000000L;
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,217 @@
+package com.derektrauger.library.loadtest;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+* Embedded HTTP server serving generated JPEG images at /img/{id}.jpg with configurable latency,
+* per response bandwidth and error rate. Counts every request so duplicate fetches are visible.
+*
+* Errors are derived from the image id and the number of times it was requested, not from a
+* shared random sequence, so the same trace fails the same requests regardless of thread timing.
+*/
+public class ImageServer {
+
+    private static final String PATH_PREFIX = "/img/";
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private final LoadTestConfig config;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Integer, byte[]> images = new ConcurrentHashMap<Integer, byte[]>();
+    private final ConcurrentHashMap<Integer, AtomicInteger> requestsPerImage = new ConcurrentHashMap<Integer, AtomicInteger>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public ImageServer(LoadTestConfig config) throws IOException {
+        this.config = config;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        this.executor = Executors.newFixedThreadPool(32);
+        server.setExecutor(executor);
+        server.createContext(PATH_PREFIX, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl(int id) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH_PREFIX + id + ".jpg";
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        final int id = parseId(exchange.getRequestURI().getPath());
+        requests.incrementAndGet();
+        AtomicInteger count = requestsPerImage.get(id);
+        if (count == null) {
+            final AtomicInteger created = new AtomicInteger();
+            count = requestsPerImage.putIfAbsent(id, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        final int attempt = count.incrementAndGet();
+
+        sleep(config.latencyMs);
+
+        if (id < 0 || isError(id, attempt)) {
+            errors.incrementAndGet();
+            exchange.sendResponseHeaders(id < 0 ? 404 : 500, -1);
+            return;
+        }
+
+        final byte[] image = getImage(id);
+        // Not image/jpeg: the JDK's URL.getContent() would return an AWT ImageProducer for image
+        // content types where Android returns the InputStream BitmapProcessor expects
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, image.length);
+
+        final OutputStream out = exchange.getResponseBody();
+        final long chunkDelayNanos = config.bandwidthBytesPerSecond > 0
+                ? CHUNK_SIZE * 1000000000L / config.bandwidthBytesPerSecond : 0;
+        for (int offset = 0; offset < image.length; offset += CHUNK_SIZE) {
+            final int length = Math.min(CHUNK_SIZE, image.length - offset);
+            out.write(image, offset, length);
+            out.flush();
+            bytesSent.addAndGet(length);
+            if (chunkDelayNanos > 0) {
+                sleepNanos(chunkDelayNanos * length / CHUNK_SIZE);
+            }
+        }
+    }
+
+    private boolean isError(int id, int attempt) {
+        if (config.errorRate <= 0) {
+            return false;
+        }
+        return new Random(config.seed * 31 + id * 1009L + attempt).nextDouble() < config.errorRate;
+    }
+
+    private static int parseId(String path) {
+        try {
+            final int end = path.indexOf('.', PATH_PREFIX.length());
+            return Integer.parseInt(path.substring(PATH_PREFIX.length(), end < 0 ? path.length() : end));
+        } catch (NumberFormatException e) {
+            return -1;
+        } catch (IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private byte[] getImage(int id) throws IOException {
+        byte[] image = images.get(id);
+        if (image == null) {
+            image = generateImage(id);
+            images.putIfAbsent(id, image);
+        }
+        return image;
+    }
+
+    /**
+    * Draws a deterministic gradient with some noise per id, so JPEG sizes are realistic and vary.
+    */
+    private byte[] generateImage(int id) throws IOException {
+        final int width = config.imageWidth;
+        final int height = config.imageHeight;
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(config.seed + id);
+        final Color start = new Color(random.nextInt(0xffffff));
+        final Color end = new Color(random.nextInt(0xffffff));
+
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new java.awt.GradientPaint(0, 0, start, width, height, end));
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(new Color(random.nextInt(0xffffff)));
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), 4 + random.nextInt(width / 8), 4 + random.nextInt(height / 8));
+        }
+        graphics.dispose();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+    * Generates the images up front so generation time does not count as server latency.
+    */
+    public void warmUp(int imageCount) throws IOException {
+        for (int id = 0; id < imageCount; id++) {
+            getImage(id);
+        }
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public int getUniqueImageCount() {
+        return requestsPerImage.size();
+    }
+
+    /**
+    * Requests beyond the first one for each image, including the retries of failed requests.
+    */
+    public int getDuplicateRequestCount() {
+        return requests.get() - requestsPerImage.size();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
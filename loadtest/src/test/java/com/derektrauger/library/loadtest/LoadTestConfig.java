@@ -0,0 +1,99 @@
+package com.derektrauger.library.loadtest;
+
+/**
+* Load test configuration, read from -Dloadtest.* system properties so configurations can be
+* compared from the command line without code changes.
+*/
+public class LoadTestConfig {
+
+    /* Run */
+    public final String name;
+    public final long seed;
+    public final String reportDir;
+
+    /* Content */
+    public final int rowCount;
+    public final int rowHeight;
+    public final int viewportHeight;
+    public final int imageWidth;
+    public final int imageHeight;
+    // Optional CSV of "timeMs,offsetPx" lines replacing the generated trace
+    public final String traceFile;
+    public final long traceDurationMs;
+
+    /* Server */
+    public final long latencyMs;
+    public final long bandwidthBytesPerSecond;
+    public final double errorRate;
+
+    /* Pipeline */
+    public final int requestedWidth;
+    public final int requestedHeight;
+    public final int diskCacheSize;
+    public final boolean pauseOnFling;
+    public final boolean publishVisibleRange;
+    public final int lookaheadRows;
+    public final int prefetchRows;
+    public final long drainTimeoutMs;
+
+    public LoadTestConfig() {
+        name = getString("name", "default");
+        seed = getLong("seed", 42);
+        reportDir = getString("reportDir", "target");
+
+        rowCount = getInt("rows", 2000);
+        rowHeight = getInt("rowHeight", 240);
+        viewportHeight = getInt("viewportHeight", 1920);
+        imageWidth = getInt("imageWidth", 800);
+        imageHeight = getInt("imageHeight", 600);
+        traceFile = getString("trace", null);
+        traceDurationMs = getLong("traceDurationMs", 45000);
+
+        latencyMs = getLong("latencyMs", 80);
+        bandwidthBytesPerSecond = getLong("bandwidthKBps", 2048) * 1024;
+        errorRate = getDouble("errorRate", 0.01);
+
+        requestedWidth = getInt("requestedWidth", 400);
+        requestedHeight = getInt("requestedHeight", 300);
+        diskCacheSize = getInt("diskCacheMB", 10) * 1024 * 1024;
+        pauseOnFling = getBoolean("pauseOnFling", true);
+        publishVisibleRange = getBoolean("visibleRange", true);
+        lookaheadRows = getInt("lookaheadRows", 2);
+        prefetchRows = getInt("prefetchRows", 0);
+        drainTimeoutMs = getLong("drainTimeoutMs", 15000);
+    }
+
+    public String describe() {
+        return "name=" + name + " seed=" + seed + " rows=" + rowCount + " image=" + imageWidth + "x" + imageHeight
+                + " requested=" + requestedWidth + "x" + requestedHeight + " latencyMs=" + latencyMs
+                + " bandwidthKBps=" + bandwidthBytesPerSecond / 1024 + " errorRate=" + errorRate
+                + " pauseOnFling=" + pauseOnFling + " visibleRange=" + publishVisibleRange
+                + " lookaheadRows=" + lookaheadRows + " prefetchRows=" + prefetchRows
+                + " diskCacheMB=" + diskCacheSize / (1024 * 1024) + " maxHeapMB=" + Runtime.getRuntime().maxMemory() / (1024 * 1024);
+    }
+
+    private static String getString(String key, String defaultValue) {
+        final String value = System.getProperty("loadtest." + key);
+        return value == null || value.length() == 0 ? defaultValue : value;
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        final String value = getString(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        final String value = getString(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private static double getDouble(String key, double defaultValue) {
+        final String value = getString(key, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        final String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,165 @@
+package com.derektrauger.library.loadtest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.derektrauger.library.imaging.ImageMetrics;
+
+/**
+* Results of one load test run. Printed as text and appended as one CSV row to
+* loadtest-results.csv, so runs of different configurations line up for comparison.
+*/
+public class LoadTestReport {
+
+    private static final String CSV_HEADER = "name,binds,displayed,abandoned,undisplayed,p50Ms,p90Ms,p99Ms,maxMs,"
+            + "requests,uniqueImages,duplicateRequests,serverErrors,bytesTransferred,memoryHitRatio,diskHitRatio,"
+            + "peakResidentBytes,pausedFrames,frames,durationMs";
+
+    private final LoadTestConfig config;
+
+    private long[] displayNanos = new long[1024];
+    private int displayed;
+    private int binds;
+    private int abandoned;
+    private int undisplayed;
+    private long peakResidentBytes;
+    private int pausedFrames;
+    private int frames;
+    private long durationMs;
+
+    private int requests;
+    private int uniqueImages;
+    private int duplicateRequests;
+    private int serverErrors;
+    private long bytesTransferred;
+    private ImageMetrics.Snapshot metrics;
+
+    public LoadTestReport(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    public void onBind() {
+        binds++;
+    }
+
+    /**
+    * Time from binding a row to its image being set on the view. Zero for memory cache hits,
+    * which are set synchronously.
+    */
+    public void onDisplayed(long nanos) {
+        if (displayed == displayNanos.length) {
+            displayNanos = Arrays.copyOf(displayNanos, displayed * 2);
+        }
+        displayNanos[displayed++] = nanos;
+    }
+
+    /**
+    * A row was recycled before its image was displayed.
+    */
+    public void onAbandoned() {
+        abandoned++;
+    }
+
+    public void onFrame(long residentBytes, boolean paused) {
+        frames++;
+        if (paused) {
+            pausedFrames++;
+        }
+        peakResidentBytes = Math.max(peakResidentBytes, residentBytes);
+    }
+
+    public void finish(ImageServer server, ImageMetrics.Snapshot metrics, int undisplayed, long durationMs) {
+        this.requests = server.getRequestCount();
+        this.uniqueImages = server.getUniqueImageCount();
+        this.duplicateRequests = server.getDuplicateRequestCount();
+        this.serverErrors = server.getErrorCount();
+        this.bytesTransferred = server.getBytesSent();
+        this.metrics = metrics;
+        this.undisplayed = undisplayed;
+        this.durationMs = durationMs;
+        Arrays.sort(displayNanos, 0, displayed);
+    }
+
+    public int getDisplayed() {
+        return displayed;
+    }
+
+    /**
+    * Nearest rank percentile of the time to display in milliseconds, between 0 and 100.
+    */
+    public double getPercentileMs(double percentile) {
+        if (displayed == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(displayed * percentile / 100.0);
+        return displayNanos[Math.max(0, Math.min(displayed, rank) - 1)] / 1000000.0;
+    }
+
+    public String toText() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Load test ").append(config.name).append('\n');
+        sb.append("  config        ").append(config.describe()).append('\n');
+        sb.append(format("  rows          %d bound, %d displayed, %d abandoned while loading, %d never displayed",
+                binds, displayed, abandoned, undisplayed));
+        sb.append(format("  display ms    p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+                getPercentileMs(50), getPercentileMs(90), getPercentileMs(99), getPercentileMs(100)));
+        sb.append(format("  network       %d requests for %d images, %d duplicates, %d server errors, %d KB transferred",
+                requests, uniqueImages, duplicateRequests, serverErrors, bytesTransferred / 1024));
+        sb.append(format("  cache         memory hit ratio %.3f, disk hit ratio %.3f",
+                metrics.getHitRatio(ImageMetrics.MEMORY_HIT, ImageMetrics.MEMORY_MISS),
+                metrics.getHitRatio(ImageMetrics.DISK_HIT, ImageMetrics.DISK_MISS)));
+        sb.append(format("  pipeline      network p50 %d us, p99 %d us; queue wait p50 %d us, p99 %d us",
+                metrics.getPercentileMicros(ImageMetrics.NETWORK_TIME, 50), metrics.getPercentileMicros(ImageMetrics.NETWORK_TIME, 99),
+                metrics.getPercentileMicros(ImageMetrics.QUEUE_WAIT_TIME, 50), metrics.getPercentileMicros(ImageMetrics.QUEUE_WAIT_TIME, 99)));
+        sb.append(format("  memory        peak resident bitmaps %d KB", peakResidentBytes / 1024));
+        sb.append(format("  frames        %d over %d ms, %d paused", frames, durationMs, pausedFrames));
+        return sb.toString();
+    }
+
+    public String toCsvRow() {
+        return String.format(Locale.US, "%s,%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%d,%d,%d,%d,%d,%.4f,%.4f,%d,%d,%d,%d",
+                config.name.replace(',', '_'), binds, displayed, abandoned, undisplayed,
+                getPercentileMs(50), getPercentileMs(90), getPercentileMs(99), getPercentileMs(100),
+                requests, uniqueImages, duplicateRequests, serverErrors, bytesTransferred,
+                metrics.getHitRatio(ImageMetrics.MEMORY_HIT, ImageMetrics.MEMORY_MISS),
+                metrics.getHitRatio(ImageMetrics.DISK_HIT, ImageMetrics.DISK_MISS),
+                peakResidentBytes, pausedFrames, frames, durationMs);
+    }
+
+    /**
+    * Writes loadtest-{name}.txt and appends to loadtest-results.csv in the report directory.
+    */
+    public void write() throws IOException {
+        final File dir = new File(config.reportDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create report directory " + dir);
+        }
+
+        final Writer text = new FileWriter(new File(dir, "loadtest-" + config.name + ".txt"));
+        try {
+            text.write(toText());
+        } finally {
+            text.close();
+        }
+
+        final File csvFile = new File(dir, "loadtest-results.csv");
+        final boolean writeHeader = !csvFile.exists();
+        final Writer csv = new FileWriter(csvFile, true);
+        try {
+            if (writeHeader) {
+                csv.write(CSV_HEADER + "\n");
+            }
+            csv.write(toCsvRow() + "\n");
+        } finally {
+            csv.close();
+        }
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args) + "\n";
+    }
+}
@@ -0,0 +1,145 @@
+package com.derektrauger.library.loadtest;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+* Scroll offsets over time, one sample per frame. Either generated from a seed, mixing slow
+* reading, flings, stops and flings back up, or loaded from a CSV of "timeMs,offsetPx" lines,
+* e.g. recorded on a device.
+*/
+public class ScrollTrace {
+
+    public static final long FRAME_MS = 16;
+
+    // Per frame velocity multiplier of a fling, about what OverScroller does at 60 fps
+    private static final float FLING_FRICTION = 0.965f;
+    private static final float FLING_STOP_VELOCITY = 50f; // px/s
+
+    private final long[] times;
+    private final int[] offsets;
+    private final int size;
+
+    private ScrollTrace(long[] times, int[] offsets, int size) {
+        this.times = times;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int frame) {
+        return times[frame];
+    }
+
+    public int getOffset(int frame) {
+        return offsets[frame];
+    }
+
+    public long getDuration() {
+        return size == 0 ? 0 : times[size - 1];
+    }
+
+    public static ScrollTrace generate(long seed, long durationMs, int maxOffset) {
+        final Random random = new Random(seed);
+        final int capacity = (int) (durationMs / FRAME_MS) + 1;
+        final long[] times = new long[capacity];
+        final int[] offsets = new int[capacity];
+
+        int frame = 0;
+        float offset = 0;
+        float velocity = 0;
+        // Frames left in the current phase, reading and stopping have a fixed length
+        int phaseFrames = 0;
+        boolean flinging = false;
+
+        while (frame < capacity) {
+            if (flinging) {
+                velocity *= FLING_FRICTION;
+                if (Math.abs(velocity) < FLING_STOP_VELOCITY) {
+                    flinging = false;
+                    velocity = 0;
+                }
+            } else if (phaseFrames-- <= 0) {
+                final int phase = random.nextInt(10);
+                if (phase < 4) {
+                    // Reading: slow drag down
+                    velocity = 200 + random.nextInt(600);
+                    phaseFrames = (int) ((1000 + random.nextInt(2000)) / FRAME_MS);
+                } else if (phase < 7) {
+                    // Fling down
+                    velocity = 3000 + random.nextInt(7000);
+                    flinging = true;
+                } else if (phase < 8) {
+                    // Fling back up, over rows that may still be cached
+                    velocity = -(2000 + random.nextInt(5000));
+                    flinging = true;
+                } else {
+                    // Stop and look
+                    velocity = 0;
+                    phaseFrames = (int) ((500 + random.nextInt(1500)) / FRAME_MS);
+                }
+            }
+
+            offset += velocity * FRAME_MS / 1000f;
+            if (offset < 0 || offset > maxOffset) {
+                offset = Math.max(0, Math.min(maxOffset, offset));
+                velocity = 0;
+                flinging = false;
+                phaseFrames = 0;
+            }
+
+            times[frame] = frame * FRAME_MS;
+            offsets[frame] = Math.round(offset);
+            frame++;
+        }
+
+        return new ScrollTrace(times, offsets, frame);
+    }
+
+    /**
+    * Loads "timeMs,offsetPx" lines, blank lines and lines starting with # are skipped.
+    * Times must be increasing and start anywhere, they are shifted to start at 0.
+    */
+    public static ScrollTrace load(String path) throws IOException {
+        long[] times = new long[1024];
+        int[] offsets = new int[1024];
+        int size = 0;
+
+        final BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                final int comma = line.indexOf(',');
+                if (comma < 0) {
+                    throw new IOException("Expected timeMs,offsetPx: " + line);
+                }
+                if (size == times.length) {
+                    times = java.util.Arrays.copyOf(times, size * 2);
+                    offsets = java.util.Arrays.copyOf(offsets, size * 2);
+                }
+                times[size] = Long.parseLong(line.substring(0, comma).trim());
+                offsets[size] = Integer.parseInt(line.substring(comma + 1).trim());
+                if (size > 0 && times[size] < times[size - 1]) {
+                    throw new IOException("Times must be increasing: " + line);
+                }
+                size++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            times[i] -= times[0];
+        }
+        return new ScrollTrace(times, offsets, size);
+    }
+}
@@ -0,0 +1,183 @@
+package com.derektrauger.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+* TileProvider serving the tiles of an archive written by TileArchiveWriter, for offline maps.
+* The index and the tile data are memory mapped when the archive is opened: a lookup is a binary
+* search over the mapped index and reads no file, the tile data is only copied into the byte[]
+* Tile requires. Tiles not in the archive are NO_TILE.
+*
+* Safe to use from the Google Maps tile threads. The mappings are released by the garbage
+* collector, not by close().
+*/
+public class ArchiveTileProvider implements TileProvider {
+
+    private final File file;
+    private final ByteBuffer index;
+    private final ByteBuffer[] segments;
+    private final int segmentSize;
+    private final int tileCount;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int minZoom;
+    private final int maxZoom;
+    private final double[] bounds;
+
+    /**
+    * @throws IOException
+    * if the file cannot be read or is not a tile archive
+    */
+    public ArchiveTileProvider(File file) throws IOException {
+        this.file = file;
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = in.getChannel();
+            final long length = channel.size();
+            if (length < TileArchiveWriter.HEADER_SIZE) {
+                throw new IOException("Not a tile archive: " + file);
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TileArchiveWriter.HEADER_SIZE);
+            if (header.getInt(TileArchiveWriter.HEADER_MAGIC) != TileArchiveWriter.MAGIC) {
+                throw new IOException("Not a tile archive: " + file);
+            }
+            final int version = header.getInt(TileArchiveWriter.HEADER_VERSION);
+            if (version != TileArchiveWriter.VERSION) {
+                throw new IOException("Unsupported tile archive version " + version + ": " + file);
+            }
+
+            tileWidth = header.getInt(TileArchiveWriter.HEADER_TILE_WIDTH);
+            tileHeight = header.getInt(TileArchiveWriter.HEADER_TILE_HEIGHT);
+            minZoom = header.getInt(TileArchiveWriter.HEADER_MIN_ZOOM);
+            maxZoom = header.getInt(TileArchiveWriter.HEADER_MAX_ZOOM);
+            segmentSize = header.getInt(TileArchiveWriter.HEADER_SEGMENT_SIZE);
+            tileCount = header.getInt(TileArchiveWriter.HEADER_TILE_COUNT);
+            final long indexOffset = header.getLong(TileArchiveWriter.HEADER_INDEX_OFFSET);
+            bounds = new double[] {
+                    header.getDouble(TileArchiveWriter.HEADER_SOUTH),
+                    header.getDouble(TileArchiveWriter.HEADER_WEST),
+                    header.getDouble(TileArchiveWriter.HEADER_NORTH),
+                    header.getDouble(TileArchiveWriter.HEADER_EAST) };
+
+            final long indexSize = (long) tileCount * TileArchiveWriter.ENTRY_SIZE;
+            if (segmentSize <= 0 || tileCount < 0 || indexOffset < TileArchiveWriter.HEADER_SIZE
+                    || indexOffset + indexSize != length || indexSize > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt tile archive: " + file);
+            }
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexSize);
+
+            // Tiles never cross a segment boundary, each is read from one mapping
+            segments = new ByteBuffer[(int) ((indexOffset + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                final long start = (long) i * segmentSize;
+                final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(segmentSize, indexOffset - start));
+                segments[i] = segment;
+            }
+        } finally {
+            // Mappings stay valid after the channel is closed
+            in.close();
+        }
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        final ByteBuffer buffer = getTileData(x, y, zoom);
+        if (buffer == null) {
+            return NO_TILE;
+        }
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new Tile(tileWidth, tileHeight, data);
+    }
+
+    /**
+    * Returns a read only view of the encoded tile in the mapped file, without copying it, or
+    * null if the tile is not in the archive.
+    */
+    public ByteBuffer getTileData(int x, int y, int zoom) {
+        final int entry = find(x, y, zoom);
+        if (entry < 0) {
+            return null;
+        }
+        final int position = entry * TileArchiveWriter.ENTRY_SIZE;
+        final long offset = index.getLong(position + 8);
+        final int length = index.getInt(position + 16);
+
+        // Duplicates keep the shared mapping's position and limit untouched
+        final ByteBuffer tile = segments[(int) (offset / segmentSize)].duplicate();
+        final int start = (int) (offset % segmentSize);
+        tile.limit(start + length);
+        tile.position(start);
+        return tile.slice();
+    }
+
+    public boolean contains(int x, int y, int zoom) {
+        return find(x, y, zoom) >= 0;
+    }
+
+    /**
+    * Binary search of the index, O(log n) reads of the mapped entries.
+    *
+    * @return the entry of the tile, or -1
+    */
+    private int find(int x, int y, int zoom) {
+        if (zoom < minZoom || zoom > maxZoom || x < 0 || y < 0 || x >= 1 << zoom || y >= 1 << zoom) {
+            return -1;
+        }
+        final long key = TileArchiveWriter.getKey(x, y, zoom);
+        int low = 0;
+        int high = tileCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long middleKey = index.getLong(middle * TileArchiveWriter.ENTRY_SIZE);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+    * Region the archive was written for, as south, west, north, east.
+    */
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+}
@@ -0,0 +1,356 @@
+package com.derektrauger.library;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.derektrauger.library.imaging.DiskLruImageCache;
+import com.derektrauger.library.imaging.ImageMetrics;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+* TileProvider serving the tiles of an XYZUrlTileProvider from a memory cache of hot tiles, then
+* from a raw bytes disk cache, and only then from the network. Downloaded tiles are stored as
+* received, without decoding, so revisiting an area costs no network until the tiles expire or
+* are evicted.
+*
+* Keys are the tile coordinates, use a dedicated DiskLruImageCache per tile source. Each disk entry
+* starts with a small header holding the download time, a hit reads header and tile from a single
+* snapshot. getTile() blocks and is called by Google Maps on its own background threads.
+*/
+public class CachedTileProvider implements TileProvider {
+
+    private static final String LOG_TAG = "CachedTileProvider";
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final int TIMEOUT = 15000; // ms
+    public static final long NO_MAX_AGE = 0;
+    public static final int DEFAULT_MEMORY_CACHE_SIZE = 2 * 1024 * 1024; // 2MB
+    // Disk entry header: magic, then the download time in milliseconds
+    private static final int ENTRY_MAGIC = 0x54494c45; // "TILE"
+    private static final int ENTRY_HEADER_SIZE = 12;
+
+    private final XYZUrlTileProvider urlTileProvider;
+    private final DiskLruImageCache diskCache;
+    private final long maxAge;
+    private final LruCache<String, CachedTile> memoryCache;
+    private final ImageMetrics metrics = new ImageMetrics();
+    // Downloads in progress by key, released when the tile is cached or failed
+    private final ConcurrentHashMap<String, CountDownLatch> downloads = new ConcurrentHashMap<String, CountDownLatch>();
+
+    public CachedTileProvider(XYZUrlTileProvider urlTileProvider, DiskLruImageCache diskCache) {
+        this(urlTileProvider, diskCache, NO_MAX_AGE, DEFAULT_MEMORY_CACHE_SIZE);
+    }
+
+    /**
+    * @param maxAge
+    * Milliseconds after which a cached tile is downloaded again, NO_MAX_AGE to keep tiles until
+    * they are evicted. Expired tiles are still served when the download fails.
+    * @param memoryCacheSize
+    * Bytes of encoded tiles kept in memory
+    */
+    public CachedTileProvider(XYZUrlTileProvider urlTileProvider, DiskLruImageCache diskCache, long maxAge, int memoryCacheSize) {
+        this.urlTileProvider = urlTileProvider;
+        this.diskCache = diskCache;
+        this.maxAge = maxAge;
+        this.memoryCache = new LruCache<String, CachedTile>(memoryCacheSize) {
+            @Override
+            protected int sizeOf(String key, CachedTile value) {
+                return value.tile.data.length;
+            }
+        };
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        return getTile(x, y, zoom, true);
+    }
+
+    /**
+    * Downloads the tile into the disk cache unless a fresh copy is cached already, without
+    * filling the memory tier. Blocks, call it from a background thread.
+    *
+    * @return true if the tile is cached or does not exist on the server
+    */
+    public boolean prefetchTile(int x, int y, int zoom) {
+        return getTile(x, y, zoom, false) != null;
+    }
+
+    /**
+    * Returns true if a fresh copy of the tile is in the memory or the disk tier.
+    */
+    public boolean isCached(int x, int y, int zoom) {
+        final String key = getKey(x, y, zoom);
+        final long now = System.currentTimeMillis();
+        final CachedTile cached = memoryCache.get(key);
+        if (cached != null && !isExpired(cached.fetchedAt, now)) {
+            return true;
+        }
+        final long fetchedAt = readFetchedAt(key);
+        return fetchedAt >= 0 && !isExpired(fetchedAt, now);
+    }
+
+    /**
+    * Returns the tile if a fresh copy is in the memory or the disk tier, null otherwise. Never
+    * downloads, a tile read from disk is kept in memory.
+    */
+    public Tile getCachedTile(int x, int y, int zoom) {
+        final String key = getKey(x, y, zoom);
+        final long now = System.currentTimeMillis();
+        final CachedTile cached = memoryCache.get(key);
+        if (cached != null && !isExpired(cached.fetchedAt, now)) {
+            return cached.tile;
+        }
+        final CachedTile onDisk = readEntry(key);
+        if (onDisk == null || isExpired(onDisk.fetchedAt, now)) {
+            return null;
+        }
+        memoryCache.put(key, onDisk);
+        return onDisk.tile;
+    }
+
+    private Tile getTile(int x, int y, int zoom, boolean keepInMemory) {
+        final String key = getKey(x, y, zoom);
+        CachedTile stale = null;
+
+        // At most one download per tile: Maps and a prefetcher can ask for the same one at once,
+        // the late callers wait for the first and then find it in the cache
+        CountDownLatch download = null;
+        // Counters are updated by the first pass only, later passes follow a wait on another download
+        boolean firstPass = true;
+        while (download == null) {
+            final long now = System.currentTimeMillis();
+            final CachedTile cached = memoryCache.get(key);
+            if (cached != null && !isExpired(cached.fetchedAt, now)) {
+                if (firstPass) {
+                    metrics.increment(ImageMetrics.MEMORY_HIT);
+                }
+                return cached.tile;
+            }
+            if (firstPass) {
+                metrics.increment(ImageMetrics.MEMORY_MISS);
+            }
+
+            stale = cached;
+            final CachedTile onDisk = readEntry(key);
+            if (onDisk != null) {
+                if (!isExpired(onDisk.fetchedAt, now)) {
+                    if (firstPass) {
+                        metrics.increment(ImageMetrics.DISK_HIT);
+                    }
+                    if (keepInMemory) {
+                        memoryCache.put(key, onDisk);
+                    }
+                    return onDisk.tile;
+                }
+                stale = onDisk;
+            }
+            if (firstPass) {
+                metrics.increment(ImageMetrics.DISK_MISS);
+            }
+            firstPass = false;
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch running = downloads.putIfAbsent(key, latch);
+            if (running == null) {
+                download = latch;
+            } else if (!await(running)) {
+                return stale != null ? stale.tile : null;
+            }
+        }
+
+        final Tile tile;
+        try {
+            tile = download(x, y, zoom, key, keepInMemory);
+        } finally {
+            downloads.remove(key);
+            download.countDown();
+        }
+        if (tile != null) {
+            return tile;
+        }
+        // An outdated tile is better than a gray square, Maps asks again later for null tiles
+        return stale != null ? stale.tile : null;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+    * Downloads the tile into the disk cache without decoding it. Tiles the server does not have
+    * are returned as NO_TILE and not cached.
+    *
+    * @return the tile, or null if it could not be downloaded
+    */
+    private Tile download(int x, int y, int zoom, String key, boolean keepInMemory) {
+        final URL url = urlTileProvider.getTileUrl(x, y, zoom);
+        if (url == null) {
+            return NO_TILE;
+        }
+
+        final long start = System.nanoTime();
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setConnectTimeout(TIMEOUT);
+            urlConnection.setReadTimeout(TIMEOUT);
+            urlConnection.setRequestProperty("Accept-Encoding", "");
+            final int responseCode = urlConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                return NO_TILE;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                metrics.increment(ImageMetrics.NETWORK_FAILURE);
+                return null;
+            }
+
+            inputStream = new BufferedInputStream(urlConnection.getInputStream(), IO_BUFFER_SIZE);
+            final int length = urlConnection.getContentLength();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? length : IO_BUFFER_SIZE);
+            final byte[] buffer = new byte[IO_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            final byte[] data = out.toByteArray();
+
+            metrics.add(ImageMetrics.BYTES_DOWNLOADED, data.length);
+            metrics.recordTime(ImageMetrics.NETWORK_TIME, System.nanoTime() - start);
+            metrics.increment(ImageMetrics.NETWORK_SUCCESS);
+
+            final long fetchedAt = System.currentTimeMillis();
+            final long writeStart = System.nanoTime();
+            putEntry(diskCache, key, data, fetchedAt);
+            metrics.recordTime(ImageMetrics.DISK_WRITE_TIME, System.nanoTime() - writeStart);
+
+            final Tile tile = newTile(data);
+            if (keepInMemory) {
+                memoryCache.put(key, new CachedTile(tile, fetchedAt));
+            }
+            return tile;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Failed to download tile " + url + ": " + e);
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+        return null;
+    }
+
+    /**
+    * Stores the tile on disk behind the header holding its download time.
+    */
+    static boolean putEntry(DiskLruImageCache diskCache, String key, byte[] data, long fetchedAt) {
+        final ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        header.putInt(ENTRY_MAGIC).putLong(fetchedAt);
+        return diskCache.put(key, new SequenceInputStream(new ByteArrayInputStream(header.array()), new ByteArrayInputStream(data)));
+    }
+
+    /**
+    * Reads the header and the tile of a disk entry from one snapshot.
+    *
+    * @return the tile, or null if it is not on disk
+    */
+    private CachedTile readEntry(String key) {
+        final byte[] entry = diskCache.getBytes(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.length < ENTRY_HEADER_SIZE || ByteBuffer.wrap(entry).getInt(0) != ENTRY_MAGIC) {
+            // Written without a header, its age is unknown
+            return new CachedTile(newTile(entry), 0);
+        }
+        final byte[] data = new byte[entry.length - ENTRY_HEADER_SIZE];
+        System.arraycopy(entry, ENTRY_HEADER_SIZE, data, 0, data.length);
+        return new CachedTile(newTile(data), ByteBuffer.wrap(entry).getLong(4));
+    }
+
+    /**
+    * Reads only the header of a disk entry.
+    *
+    * @return the download time of the tile, 0 if unknown, or -1 if it is not on disk
+    */
+    private long readFetchedAt(String key) {
+        final InputStream in = diskCache.getInputStream(key);
+        if (in == null) {
+            return -1;
+        }
+        try {
+            final DataInputStream header = new DataInputStream(in);
+            return header.readInt() == ENTRY_MAGIC ? header.readLong() : 0;
+        } catch (IOException e) {
+            // Shorter than a header
+            return 0;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private Tile newTile(byte[] data) {
+        return new Tile(urlTileProvider.getTileWidth(), urlTileProvider.getTileHeight(), data);
+    }
+
+    private boolean isExpired(long fetchedAt, long now) {
+        return maxAge > NO_MAX_AGE && now - fetchedAt > maxAge;
+    }
+
+    /**
+    * Disk cache key of a tile. DiskLruCache 1.3.1, the version in libs/, rejects keys not matching
+    * [a-z0-9_-]{1,64} in validateKey(), "zoom_x_y" is at most 24 characters of digits and '_'.
+    */
+    static String getKey(int x, int y, int zoom) {
+        return new StringBuilder(24).append(zoom).append('_').append(x).append('_').append(y).toString();
+    }
+
+    /**
+    * Cache and network counters of this provider, MEMORY_*, DISK_*, NETWORK_* and BYTES_DOWNLOADED.
+    */
+    public ImageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void evictMemory() {
+        memoryCache.evictAll();
+    }
+
+    private static final class CachedTile {
+        private final Tile tile;
+        private final long fetchedAt;
+
+        private CachedTile(Tile tile, long fetchedAt) {
+            this.tile = tile;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.derektrauger.library;
+
+import java.util.Arrays;
+
+/**
+* Hash map from primitive long keys to objects, for the cell maps of SpatialIndex and
+* MarkerClusterer. Open addressing with linear probing in two arrays: lookups do not box the key
+* and entries are not allocated. Values cannot be null.
+*
+* Iterate with capacity(), keyAt() and valueAt(), slots without an entry have a null value. The
+* map must not be changed while iterating.
+*/
+final class LongHashMap<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongHashMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int slot = getSlot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    void put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null value for key " + key);
+        }
+        int slot = getSlot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        // Probe chains stay short below half full
+        if (++size * 2 > values.length) {
+            rehash(values.length * 2);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int slot = getSlot(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                final V value = (V) values[slot];
+                // Shift back the entries whose probe chain crosses the slot, lookups stop at the
+                // first empty slot so no hole may be left in a chain
+                int hole = slot;
+                int next = (slot + 1) & mask;
+                while (values[next] != null) {
+                    final int home = getSlot(keys[next]);
+                    if (((next - home) & mask) >= ((next - hole) & mask)) {
+                        keys[hole] = keys[next];
+                        values[hole] = values[next];
+                        hole = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                values[hole] = null;
+                size--;
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    private int getSlot(long key) {
+        // Cell keys differ in both halves, mix the high half into the low bits
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = getSlot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
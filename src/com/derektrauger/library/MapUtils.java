@@ -13,19 +13,34 @@ public class MapUtils {
 	private static double BASE_X_ORIGIN = -20037508.3427892;
 	private static double BASE_Y_ORIGIN = 20037508.3427892;
 
+	// Projections of the integer zoom levels are cached, higher levels are created on demand
+	private static final int MAX_CACHED_ZOOM = 30;
+	private static final Projection[] PROJECTIONS = new Projection[MAX_CACHED_ZOOM + 1];
+
+	// Latitude at which the mercator map is square, tiles end there
+	public static final double MAX_LATITUDE = 85.05112877980659;
+
+	// Tile ranges are int[4] arrays of { minX, minY, maxX, maxY }, both ends included. When a box crosses the
+	// antimeridian maxX is past the last tile of the zoom level, iteration wraps x back to the first tiles.
+	public static final int RANGE_MIN_X = 0;
+	public static final int RANGE_MIN_Y = 1;
+	public static final int RANGE_MAX_X = 2;
+	public static final int RANGE_MAX_Y = 3;
+
+	// Receives the tiles of a range, return false to stop the iteration
+	public interface TileVisitor {
+		boolean VisitTile(int x, int y, int zoom);
+	}
+
 	//*********************************************************************************************************
 	// Convert northing easting to lat lon
 	public static LatLng NorthingEastingToLatLon(PointF ne) {
-		int zoom = 1;
-		
-		// Convert northing/easting to xy
-		double xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoom);
-		double yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoom);
-
-		double x = (ne.x - BASE_X_ORIGIN) / xRes;
-		double y = (ne.y - BASE_Y_ORIGIN) / yRes;
+		// Northing and easting do not depend on the zoom, any projection converts them
+		Projection projection = getProjection(1);
+		double x = projection.EastingToX(ne.x);
+		double y = projection.NorthingToY(ne.y);
 
-		return XYToLatLon(x, y, zoom);
+		return new LatLng(projection.YToLat(y), projection.XToLon(x));
 	}
 
 	// Convert lat lon to northing easting
@@ -35,14 +50,10 @@ public class MapUtils {
 
 	// Convert lat lon to northing easting
 	public static PointF LatLonToNorthingEasting(double lat, double lon) {
-		int zoom = 1;
-		PointF xy = LatLonToXY(lat, lon, zoom);
-		
-		double xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoom);
-		double yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoom);
-
-		double northing = BASE_Y_ORIGIN + xy.y * yRes;
-		double easting = BASE_X_ORIGIN + xy.x * xRes;
+		// Stays in double until the result, rounding the pixel coordinates to float lost meters
+		Projection projection = getProjection(1);
+		double northing = projection.YToNorthing(projection.LatToY(lat));
+		double easting = projection.XToEasting(projection.LonToX(lon));
 		
 		return new PointF((float)(easting), (float)(northing));
 	}
@@ -50,22 +61,18 @@ public class MapUtils {
 	// Convert northing easting to xy
 	public static PointF NorthingEastingToXY(PointF ne, double zoom) {
 		// Convert northing/easting to xy
-		double xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoom);
-		double yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoom);
-
-		double x = Math.round((ne.x - BASE_X_ORIGIN) / xRes);
-		double y = Math.round((ne.y - BASE_Y_ORIGIN) / yRes);
+		Projection projection = getProjection(zoom);
+		double x = Math.round(projection.EastingToX(ne.x));
+		double y = Math.round(projection.NorthingToY(ne.y));
 
 		return new PointF((float)(x), (float)(y));
 	}
 
 	// Convert XY to northing easting
 	public static PointF XYToNorthingEasting(PointF xy, double zoom) {
-		double xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoom);
-		double yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoom);
-
-		double northing = BASE_Y_ORIGIN + xy.y * yRes;
-		double easting = BASE_X_ORIGIN + xy.x * xRes;
+		Projection projection = getProjection(zoom);
+		double northing = projection.YToNorthing(xy.y);
+		double easting = projection.XToEasting(xy.x);
 		
 		return new PointF((float)(easting), (float)(northing));
 	}
@@ -73,86 +80,320 @@ public class MapUtils {
 	//*********************************************************************************************************
 	// Converts lat lon to world x y coordinates
 	public static PointF LatLonToXY(double lat, double lon, int zoom) {
-
-		lat = Math.toRadians(lat);
-		lon = Math.toRadians(lon);
-
-		double circumference = TILE_SIZE * Math.pow(2, zoom);
-		double falseEasting = circumference / 2.0;
-		double falseNorthing = circumference / 2.0;
-		double radius = circumference / (2 * Math.PI);
-		
-		double y = radius / 2.0 * Math.log( (1.0 + Math.sin(lat)) / (1.0 - Math.sin(lat)));
-		double x = radius * lon;  
-		
-		return new PointF((float)(falseEasting + x), (float)(falseNorthing - y)); 
+		Projection projection = getProjection(zoom);
+		return new PointF((float)projection.LonToX(lon), (float)projection.LatToY(lat)); 
 	}
 	
 	public static PointF LatLonToXY(double lat, double lon, double zoom) {
-
-		lat = Math.toRadians(lat);
-		lon = Math.toRadians(lon);
-
-		double circumference = TILE_SIZE * Math.pow(2, zoom);
-		double falseEasting = circumference / 2.0;
-		double falseNorthing = circumference / 2.0;
-		double radius = circumference / (2 * Math.PI);
-		
-		double y = radius / 2.0 * Math.log( (1.0 + Math.sin(lat)) / (1.0 - Math.sin(lat)));
-		double x = radius * lon;  
-		
-		return new PointF((float)(falseEasting + x), (float)(falseNorthing - y)); 
+		Projection projection = getProjection(zoom);
+		return new PointF((float)projection.LonToX(lon), (float)projection.LatToY(lat)); 
 	}
 
 	// Converts the world x y coordinates to lat lon
 	public static LatLng XYToLatLon(double x, double y, int zoom) {
-		double circumference = TILE_SIZE * Math.pow(2, zoom);
-		double falseEasting = circumference / 2.0;
-		double falseNorthing = circumference / 2.0;
-		double radius = circumference / (2 * Math.PI);
-		
-		x -= falseEasting;
-		y -= falseNorthing;
-
-		double lon = Math.toDegrees(x / radius);
-		double lat = Math.toDegrees((Math.PI/2) - (2 * Math.atan(Math.exp(-1.0 * y / radius)))) * -1;
-		
-		if (lon < -180) {
-			lon = (lon % 180) + 180;
-		}
-		if (lon > 180) {
-			lon = (lon % 180) - 180;
-		}
-		
-		return new LatLng(lat, lon);
+		Projection projection = getProjection(zoom);
+		return new LatLng(projection.YToLat(y), projection.XToLon(x));
 	}
 	
 	// Returns the tile xy name based on the lat lon
 	public static PointF LatLonToTileXY(double lat, double lon, int zoom) {
-		PointF xy = LatLonToXY(lat, lon, zoom);		
-		return new PointF((float)(Math.floor(xy.y / TILE_SIZE)),  (float)(Math.floor(xy.x / TILE_SIZE)));
+		Projection projection = getProjection(zoom);
+		return new PointF((float)(Math.floor(projection.LonToX(lon) / TILE_SIZE)), (float)(Math.floor(projection.LatToY(lat) / TILE_SIZE)));
 	}
 
-	// Returns the offset into the tile for the given lat lon
+	// Returns the offset into the tile for the given lat lon, in pixels from the top left corner of the tile
 	public static PointF LatLonToTileXYOffset(double lat, double lon, int tileX, int tileY, int zoom) {
-		PointF xy = LatLonToXY(lat, lon, zoom);
-		return new PointF((float)(tileY * TILE_SIZE + Math.floor(xy.y)), (float)(tileX * TILE_SIZE + Math.floor(xy.x)));
+		Projection projection = getProjection(zoom);
+		return new PointF((float)(Math.floor(projection.LonToX(lon)) - tileX * TILE_SIZE), (float)(Math.floor(projection.LatToY(lat)) - tileY * TILE_SIZE));
 	}
 	
 	
 	//*********************************************************************************************************
-	/*public static Rectangle2D.Double getTileExtents(int xTile, int yTile, int zoomLevel) {
+	// Returns the projection of the zoom level, cached for the integer levels
+	public static Projection getProjection(int zoom) {
+		if (zoom < 0 || zoom > MAX_CACHED_ZOOM) {
+			return new Projection(zoom);
+		}
+		// Racing threads may both create it, projections are immutable so either one will do
+		Projection projection = PROJECTIONS[zoom];
+		if (projection == null) {
+			projection = new Projection(zoom);
+			PROJECTIONS[zoom] = projection;
+		}
+		return projection;
+	}
+
+	// Returns the projection of the zoom level, cached when the level is an integer
+	private static Projection getProjection(double zoom) {
+		return zoom == (int)zoom ? getProjection((int)zoom) : new Projection(zoom);
+	}
+
+	// Spherical mercator projection at one zoom level. Holds the constants the static methods used to recompute on
+	// every call and converts arrays of points into preallocated arrays, without allocating per point. Results
+	// are doubles, the static methods return the same values rounded to float.
+	public static final class Projection {
+		private final double zoom;
+		private final double circumference;
+		private final double falseEasting;
+		private final double falseNorthing;
+		private final double radius;
+		private final double halfRadius;
+		private final double xRes;
+		private final double yRes;
+
+		public Projection(double zoom) {
+			// Computed as the static methods always did, so both give the same results
+			this.zoom = zoom;
+			this.circumference = TILE_SIZE * Math.pow(2, zoom);
+			this.falseEasting = circumference / 2.0;
+			this.falseNorthing = circumference / 2.0;
+			this.radius = circumference / (2 * Math.PI);
+			this.halfRadius = radius / 2.0;
+			this.xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoom);
+			this.yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoom);
+		}
+
+		public double getZoom() {
+			return zoom;
+		}
+
+		// Width and height of the world in pixels
+		public double getCircumference() {
+			return circumference;
+		}
+
+		public double LonToX(double lon) {
+			return falseEasting + radius * Math.toRadians(lon);
+		}
+
+		public double LatToY(double lat) {
+			double sin = Math.sin(Math.toRadians(lat));
+			return falseNorthing - halfRadius * Math.log((1.0 + sin) / (1.0 - sin));
+		}
+
+		// Longitudes beyond the antimeridian are wrapped back
+		public double XToLon(double x) {
+			double lon = Math.toDegrees((x - falseEasting) / radius);
+			if (lon < -180) {
+				lon = (lon % 180) + 180;
+			}
+			if (lon > 180) {
+				lon = (lon % 180) - 180;
+			}
+			return lon;
+		}
+
+		public double YToLat(double y) {
+			return Math.toDegrees((Math.PI/2) - (2 * Math.atan(Math.exp(-1.0 * (y - falseNorthing) / radius)))) * -1;
+		}
+
+		public double XToEasting(double x) {
+			return BASE_X_ORIGIN + x * xRes;
+		}
+
+		public double YToNorthing(double y) {
+			return BASE_Y_ORIGIN + y * yRes;
+		}
+
+		public double EastingToX(double easting) {
+			return (easting - BASE_X_ORIGIN) / xRes;
+		}
+
+		public double NorthingToY(double northing) {
+			return (northing - BASE_Y_ORIGIN) / yRes;
+		}
+
+		// Projects the first count points of lats/lons into xs/ys
+		public void LatLonToXY(double[] lats, double[] lons, double[] xs, double[] ys, int count) {
+			for (int i = 0; i < count; i++) {
+				xs[i] = LonToX(lons[i]);
+				ys[i] = LatToY(lats[i]);
+			}
+		}
+
+		// Converts the first count points of xs/ys into lats/lons
+		public void XYToLatLon(double[] xs, double[] ys, double[] lats, double[] lons, int count) {
+			for (int i = 0; i < count; i++) {
+				lats[i] = YToLat(ys[i]);
+				lons[i] = XToLon(xs[i]);
+			}
+		}
+
+		// Writes the tile containing each of the first count points into tileXs/tileYs
+		public void LatLonToTileXY(double[] lats, double[] lons, int[] tileXs, int[] tileYs, int count) {
+			for (int i = 0; i < count; i++) {
+				tileXs[i] = (int)Math.floor(LonToX(lons[i]) / TILE_SIZE);
+				tileYs[i] = (int)Math.floor(LatToY(lats[i]) / TILE_SIZE);
+			}
+		}
+
+		// Projects the first count points of lats/lons into eastings/northings in meters
+		public void LatLonToNorthingEasting(double[] lats, double[] lons, double[] eastings, double[] northings, int count) {
+			for (int i = 0; i < count; i++) {
+				eastings[i] = XToEasting(LonToX(lons[i]));
+				northings[i] = YToNorthing(LatToY(lats[i]));
+			}
+		}
+	}
+
+	//*********************************************************************************************************
+	// Computes the range of tiles covering the lat lon box at the zoom level into range and returns it. West greater
+	// than east means the box crosses the antimeridian, RANGE_MAX_X is then past the last column and x % 2^zoom is the
+	// tile. The range is never wider than the world. Latitudes beyond MAX_LATITUDE are clamped to the map.
+	public static int[] LatLonBoundsToTileRange(double south, double west, double north, double east, int zoom, int[] range) {
+		return FractionsToTileRange(LonToFraction(west), LatToFraction(north), LonToFraction(east), LatToFraction(south), west > east, zoom, range);
+	}
+
+	// Computes the range of tiles covering the northing easting box at the zoom level into range and returns it
+	public static int[] NorthingEastingBoundsToTileRange(double minEasting, double minNorthing, double maxEasting, double maxNorthing, int zoom, int[] range) {
+		double worldSize = 2 * BASE_Y_ORIGIN;
+		return FractionsToTileRange((minEasting - BASE_X_ORIGIN) / worldSize, (BASE_Y_ORIGIN - maxNorthing) / worldSize,
+				(maxEasting - BASE_X_ORIGIN) / worldSize, (BASE_Y_ORIGIN - minNorthing) / worldSize, false, zoom, range);
+	}
+
+	// Returns the number of tiles in the range
+	public static long GetTileCount(int[] range) {
+		return (long)(range[RANGE_MAX_X] - range[RANGE_MIN_X] + 1) * (range[RANGE_MAX_Y] - range[RANGE_MIN_Y] + 1);
+	}
+
+	// Returns the number of tiles covering the lat lon box over all zoom levels from minZoom to maxZoom, e.g. to size
+	// a download. The box is projected once, each zoom level only scales it.
+	public static long GetTileCount(double south, double west, double north, double east, int minZoom, int maxZoom) {
+		double minX = LonToFraction(west);
+		double maxX = LonToFraction(east);
+		double minY = LatToFraction(north);
+		double maxY = LatToFraction(south);
+		boolean wraps = west > east;
+
+		long count = 0;
+		for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+			int tiles = 1 << zoom;
+			long width = Math.min(FractionToTile(maxX, tiles) + (wraps ? tiles : 0) - FractionToTile(minX, tiles) + 1, tiles);
+			long height = FractionToTile(maxY, tiles) - FractionToTile(minY, tiles) + 1;
+			count += width * height;
+		}
+		return count;
+	}
+
+	// Fraction of the map width west of the longitude
+	private static double LonToFraction(double lon) {
+		return 0.5 + lon / 360.0;
+	}
+
+	// Fraction of the map height north of the latitude
+	private static double LatToFraction(double lat) {
+		lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+		double sin = Math.sin(Math.toRadians(lat));
+		return 0.5 - Math.log((1.0 + sin) / (1.0 - sin)) / (4 * Math.PI);
+	}
+
+	private static int FractionToTile(double fraction, int tiles) {
+		int tile = (int)Math.floor(fraction * tiles);
+		return tile < 0 ? 0 : tile >= tiles ? tiles - 1 : tile;
+	}
+
+	private static int[] FractionsToTileRange(double minX, double minY, double maxX, double maxY, boolean wraps, int zoom, int[] range) {
+		int tiles = 1 << zoom;
+		range[RANGE_MIN_X] = FractionToTile(minX, tiles);
+		range[RANGE_MIN_Y] = FractionToTile(minY, tiles);
+		// A wrapping box overlapping itself at low zoom levels covers each column once
+		range[RANGE_MAX_X] = Math.min(FractionToTile(maxX, tiles) + (wraps ? tiles : 0), range[RANGE_MIN_X] + tiles - 1);
+		range[RANGE_MAX_Y] = FractionToTile(maxY, tiles);
+		return range;
+	}
+
+	// Visits the tiles of the range row by row. Returns false if the visitor stopped the iteration.
+	public static boolean ForEachTile(int[] range, int zoom, TileVisitor visitor) {
+		int tiles = 1 << zoom;
+		for (int y = range[RANGE_MIN_Y]; y <= range[RANGE_MAX_Y]; y++) {
+			for (int x = range[RANGE_MIN_X]; x <= range[RANGE_MAX_X]; x++) {
+				if (!visitor.VisitTile(x % tiles, y, zoom)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Visits the tiles of the range from its centre outwards, ring by ring, so the tiles in the middle of the screen
+	// come first. Returns false if the visitor stopped the iteration.
+	public static boolean ForEachTileSpiral(int[] range, int zoom, TileVisitor visitor) {
+		int tiles = 1 << zoom;
+		int minX = range[RANGE_MIN_X];
+		int minY = range[RANGE_MIN_Y];
+		int maxX = range[RANGE_MAX_X];
+		int maxY = range[RANGE_MAX_Y];
+		int cx = (minX + maxX) >>> 1;
+		int cy = (minY + maxY) >>> 1;
+		int rings = Math.max(Math.max(cx - minX, maxX - cx), Math.max(cy - minY, maxY - cy));
+
+		if (!visitor.VisitTile(cx % tiles, cy, zoom)) {
+			return false;
+		}
+		for (int r = 1; r <= rings; r++) {
+			// Each edge of the ring, clipped to the range: top left to right, right top to bottom,
+			// bottom right to left, left bottom to top
+			int top = cy - r;
+			int bottom = cy + r;
+			int left = cx - r;
+			int right = cx + r;
+			if (top >= minY) {
+				for (int x = Math.max(left, minX); x <= Math.min(right, maxX); x++) {
+					if (!visitor.VisitTile(x % tiles, top, zoom)) {
+						return false;
+					}
+				}
+			}
+			if (right <= maxX) {
+				for (int y = Math.max(top + 1, minY); y <= Math.min(bottom, maxY); y++) {
+					if (!visitor.VisitTile(right % tiles, y, zoom)) {
+						return false;
+					}
+				}
+			}
+			if (bottom <= maxY) {
+				for (int x = Math.min(right - 1, maxX); x >= Math.max(left, minX); x--) {
+					if (!visitor.VisitTile(x % tiles, bottom, zoom)) {
+						return false;
+					}
+				}
+			}
+			if (left >= minX) {
+				for (int y = Math.min(bottom - 1, maxY); y >= Math.max(top + 1, minY); y--) {
+					if (!visitor.VisitTile(left % tiles, y, zoom)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	// Writes the extents of the tile in northing easting into extents and returns it: { upper left easting,
+	// upper left northing, width, height }. Height is negative as northing decreases downwards.
+	public static double[] GetTileExtents(int xTile, int yTile, int zoomLevel, double[] extents) {
 		// Convert tile coordinates and zoomlevel to northing/easting values
 		double xRes = BASE_X_PIXEL_SIZE / Math.pow(2, zoomLevel);
 		double yRes = BASE_Y_PIXEL_SIZE / Math.pow(2, zoomLevel);
 
-		// ul = upperLeft, lr = lowerRight of tile extents
-		double ulX = BASE_X_ORIGIN + (xTile * TILE_SIZE) * xRes;
-		double ulY = BASE_Y_ORIGIN + (yTile * TILE_SIZE) * yRes;
-		double width = xRes * TILE_SIZE;
-		double height = yRes * TILE_SIZE;
+		// ul = upperLeft of tile extents
+		extents[0] = BASE_X_ORIGIN + ((double)xTile * TILE_SIZE) * xRes;
+		extents[1] = BASE_Y_ORIGIN + ((double)yTile * TILE_SIZE) * yRes;
+		extents[2] = xRes * TILE_SIZE;
+		extents[3] = yRes * TILE_SIZE;
+		return extents;
+	}
 
-		return new Rectangle2D.Double(ulX, ulY, width, height);
-	}*/
+	// Writes the lat lon bounds of the tile into bounds and returns it: { south, west, north, east }
+	public static double[] GetTileLatLonBounds(int xTile, int yTile, int zoomLevel, double[] bounds) {
+		Projection projection = getProjection(zoomLevel);
+		double tiles = Math.pow(2, zoomLevel);
+		bounds[0] = projection.YToLat((yTile + 1.0) * TILE_SIZE);
+		// Longitudes are linear, computed directly so the east edge of the last tile stays at 180 rather than wrapping
+		bounds[1] = xTile / tiles * 360.0 - 180.0;
+		bounds[2] = projection.YToLat((double)yTile * TILE_SIZE);
+		bounds[3] = (xTile + 1.0) / tiles * 360.0 - 180.0;
+		return bounds;
+	}
 	
 }
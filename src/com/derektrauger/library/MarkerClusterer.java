@@ -0,0 +1,340 @@
+package com.derektrauger.library;
+
+/**
+* Groups the points of a SpatialIndex into clusters per zoom level, by square cells of a fixed
+* size in screen pixels. The clusters of every zoom level are kept up to date as points are added,
+* moved and removed, each change costs one cell update per zoom level, so the map never has to be
+* reclustered. getClusters() only visits the cells of the visible region: create markers for what
+* it returns and nothing else.
+*
+* Above the highest clustered zoom level the points are returned one by one. Levels are only kept
+* up to the first one where no two points share a cell, every cluster above it would be a single
+* point, so they are read from the index instead. The next level is built when points start to
+* merge at the highest kept one, levels are only dropped by clear().
+*
+* Not thread safe, use it from one thread or synchronize.
+*/
+public class MarkerClusterer {
+
+    public static final int DEFAULT_CELL_SIZE = 64; // dp
+    public static final int DEFAULT_MAX_ZOOM = 18;
+    // Passed to the visitor for clusters of more than one point
+    public static final int NO_POINT = -1;
+    // Cell coordinates stay ints up to here
+    private static final int MAX_ZOOM = 24;
+
+    // Receives the clusters found by getClusters(), return false to stop
+    public interface ClusterVisitor {
+        /**
+        * @param lat
+        * Centroid of the points of the cluster
+        * @param point
+        * Id of the point if the cluster has only one, NO_POINT otherwise
+        */
+        boolean visitCluster(double lat, double lon, int count, int point);
+    }
+
+    private final MapUtils.Projection projection = MapUtils.getProjection(0);
+    private final SpatialIndex index;
+    private final int minZoom;
+    private final int maxZoom;
+    private final int cellSize;
+    // Clustered levels from minZoom, built up to topZoom
+    private final Level[] levels;
+    private int topZoom;
+
+    public MarkerClusterer() {
+        this(new SpatialIndex(), 0, DEFAULT_MAX_ZOOM, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+    * @param index
+    * Index of the points, it must be empty and only be changed through this clusterer
+    * @param cellSize
+    * Size of the cluster cells in map pixels, i.e. density independent pixels on Google Maps
+    */
+    public MarkerClusterer(SpatialIndex index, int minZoom, int maxZoom, int cellSize) {
+        if (index.size() > 0) {
+            throw new IllegalArgumentException("The index must be empty");
+        }
+        if (minZoom < 0 || maxZoom < minZoom || maxZoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Invalid zoom range " + minZoom + "-" + maxZoom);
+        }
+        this.index = index;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.cellSize = cellSize;
+        this.levels = new Level[maxZoom - minZoom + 1];
+        this.levels[0] = new Level();
+        this.topZoom = minZoom;
+    }
+
+    /**
+    * @return the id of the point, see SpatialIndex
+    */
+    public int add(double lat, double lon) {
+        final int id = index.add(lat, lon);
+        addToClusters(id);
+        return id;
+    }
+
+    /**
+    * @return false if there is no point with this id
+    */
+    public boolean remove(int id) {
+        if (!index.contains(id)) {
+            return false;
+        }
+        removeFromClusters(id);
+        return index.remove(id);
+    }
+
+    public void move(int id, double lat, double lon) {
+        if (!index.contains(id)) {
+            throw new IllegalArgumentException("No point " + id);
+        }
+        removeFromClusters(id);
+        index.move(id, lat, lon);
+        addToClusters(id);
+    }
+
+    public void clear() {
+        index.clear();
+        for (int i = 1; i < levels.length; i++) {
+            levels[i] = null;
+        }
+        levels[0].clusters.clear();
+        levels[0].merged = 0;
+        topZoom = minZoom;
+    }
+
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+    * Visits the clusters whose cell intersects the lat lon box, e.g. the visible region of the
+    * map. West greater than east means the box crosses the antimeridian.
+    *
+    * @param zoom
+    * Zoom level, the camera zoom rounded down so clusters do not change while zooming within a level
+    * @return the number of clusters visited
+    */
+    public int getClusters(int zoom, double south, double west, double north, double east, final ClusterVisitor visitor) {
+        if (zoom > topZoom) {
+            return index.query(south, west, north, east, new SpatialIndex.PointVisitor() {
+                public boolean visitPoint(int id) {
+                    return visitor.visitCluster(index.getLatitude(id), index.getLongitude(id), 1, id);
+                }
+            });
+        }
+
+        final int clusterZoom = Math.max(minZoom, zoom);
+        final LongHashMap<Cluster> zoomClusters = levels[clusterZoom - minZoom].clusters;
+        final double size = getCellSize(clusterZoom);
+        final int cells = (int) Math.ceil(MapUtils.TILE_SIZE / size);
+        final int minCellY = getCell(projection.LatToY(SpatialIndex.clampLatitude(north)), size, cells);
+        final int maxCellY = getCell(projection.LatToY(SpatialIndex.clampLatitude(south)), size, cells);
+        final int minCellX = getCell(projection.LonToX(west), size, cells);
+        int maxCellX = getCell(projection.LonToX(east), size, cells);
+        if (west > east) {
+            // Across the antimeridian, a cell is visited once even if both edges are in it
+            maxCellX = Math.min(maxCellX + cells, minCellX + cells - 1);
+        }
+
+        int count = 0;
+        final long rangeCells = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (rangeCells <= zoomClusters.size()) {
+            // Small region, look up its cells
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                    final Cluster cluster = zoomClusters.get(getCellKey(cellX % cells, cellY));
+                    if (cluster != null) {
+                        count++;
+                        if (!visit(cluster, visitor)) {
+                            return count;
+                        }
+                    }
+                }
+            }
+        } else {
+            // Large region, fewer clusters exist than it spans
+            for (int slot = 0; slot < zoomClusters.capacity(); slot++) {
+                final Cluster cluster = zoomClusters.valueAt(slot);
+                if (cluster == null) {
+                    continue;
+                }
+                final long key = zoomClusters.keyAt(slot);
+                int cellX = (int) (key >> 32);
+                final int cellY = (int) key;
+                if (cellX < minCellX) {
+                    cellX += cells;
+                }
+                if (cellX <= maxCellX && cellY >= minCellY && cellY <= maxCellY) {
+                    count++;
+                    if (!visit(cluster, visitor)) {
+                        return count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Visits the points of the cluster containing the lat lon at this zoom level, e.g. the points
+    * of a tapped cluster marker.
+    *
+    * @return the number of points visited
+    */
+    public int getClusterPoints(int zoom, double lat, double lon, final SpatialIndex.PointVisitor visitor) {
+        if (zoom > maxZoom) {
+            return 0;
+        }
+        final int clusterZoom = Math.max(minZoom, zoom);
+        final double size = getCellSize(clusterZoom);
+        final int cells = (int) Math.ceil(MapUtils.TILE_SIZE / size);
+        final int cellX = getCell(projection.LonToX(lon), size, cells);
+        final int cellY = getCell(projection.LatToY(SpatialIndex.clampLatitude(lat)), size, cells);
+
+        // The box is widened by the edges of the outer cells, their points are filtered out the
+        // way they were assigned
+        final int[] count = new int[1];
+        final double minX = cellX == 0 ? Double.NEGATIVE_INFINITY : cellX * size;
+        final double maxX = cellX == cells - 1 ? Double.POSITIVE_INFINITY : (cellX + 1) * size;
+        final double minY = cellY == 0 ? Double.NEGATIVE_INFINITY : cellY * size;
+        final double maxY = cellY == cells - 1 ? Double.POSITIVE_INFINITY : (cellY + 1) * size;
+        index.queryWorld(minX, minY, maxX, maxY, new SpatialIndex.PointVisitor() {
+            public boolean visitPoint(int id) {
+                if (getCell(index.getWorldX(id), size, cells) != cellX || getCell(index.getWorldY(id), size, cells) != cellY) {
+                    return true;
+                }
+                count[0]++;
+                return visitor.visitPoint(id);
+            }
+        });
+        return count[0];
+    }
+
+    /**
+    * Number of clusters of the zoom level, for diagnostics.
+    */
+    public int getClusterCount(int zoom) {
+        if (zoom < minZoom || zoom > maxZoom) {
+            return 0;
+        }
+        if (zoom > topZoom) {
+            return index.size();
+        }
+        return levels[zoom - minZoom].clusters.size();
+    }
+
+    /**
+    * Highest zoom level whose clusters are kept, for diagnostics.
+    */
+    public int getTopZoom() {
+        return topZoom;
+    }
+
+    private boolean visit(Cluster cluster, ClusterVisitor visitor) {
+        if (cluster.count == 1) {
+            // The sum of the ids of a single point cluster is its id
+            final int id = (int) cluster.idSum;
+            return visitor.visitCluster(index.getLatitude(id), index.getLongitude(id), 1, id);
+        }
+        return visitor.visitCluster(projection.YToLat(cluster.sumY / cluster.count),
+                projection.XToLon(cluster.sumX / cluster.count), cluster.count, NO_POINT);
+    }
+
+    private void addToClusters(int id) {
+        for (int zoom = minZoom; zoom <= topZoom; zoom++) {
+            addToLevel(levels[zoom - minZoom], zoom, id);
+        }
+        // Points started to merge at the top level, they may still merge one level further down
+        while (topZoom < maxZoom && levels[topZoom - minZoom].merged > 0) {
+            topZoom++;
+            final Level level = new Level();
+            final int idLimit = index.getIdLimit();
+            for (int point = 0; point < idLimit; point++) {
+                if (index.contains(point)) {
+                    addToLevel(level, topZoom, point);
+                }
+            }
+            levels[topZoom - minZoom] = level;
+        }
+    }
+
+    private void addToLevel(Level level, int zoom, int id) {
+        final double x = index.getWorldX(id);
+        final double y = index.getWorldY(id);
+        final double size = getCellSize(zoom);
+        final int cells = (int) Math.ceil(MapUtils.TILE_SIZE / size);
+        final long key = getCellKey(getCell(x, size, cells), getCell(y, size, cells));
+        Cluster cluster = level.clusters.get(key);
+        if (cluster == null) {
+            cluster = new Cluster();
+            level.clusters.put(key, cluster);
+        } else if (cluster.count == 1) {
+            level.merged++;
+        }
+        cluster.count++;
+        cluster.sumX += x;
+        cluster.sumY += y;
+        cluster.idSum += id;
+    }
+
+    private void removeFromClusters(int id) {
+        final double x = index.getWorldX(id);
+        final double y = index.getWorldY(id);
+        for (int zoom = minZoom; zoom <= topZoom; zoom++) {
+            final Level level = levels[zoom - minZoom];
+            final double size = getCellSize(zoom);
+            final int cells = (int) Math.ceil(MapUtils.TILE_SIZE / size);
+            final long key = getCellKey(getCell(x, size, cells), getCell(y, size, cells));
+            final Cluster cluster = level.clusters.get(key);
+            if (--cluster.count == 0) {
+                level.clusters.remove(key);
+            } else {
+                if (cluster.count == 1) {
+                    level.merged--;
+                }
+                cluster.sumX -= x;
+                cluster.sumY -= y;
+                cluster.idSum -= id;
+            }
+        }
+    }
+
+    /**
+    * Size of the cells of the zoom level in zoom 0 world pixels.
+    */
+    private double getCellSize(int zoom) {
+        return cellSize / Math.pow(2, zoom);
+    }
+
+    private static int getCell(double worldPixel, double size, int cells) {
+        return Math.max(0, Math.min(cells - 1, (int) Math.floor(worldPixel / size)));
+    }
+
+    private static long getCellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+    private static final class Level {
+        private final LongHashMap<Cluster> clusters = new LongHashMap<Cluster>();
+        // Clusters of more than one point, none means every level above is single points too
+        private int merged;
+    }
+
+    private static final class Cluster {
+        private int count;
+        // Zoom 0 world pixels of the points, the centroid is their mean
+        private double sumX;
+        private double sumY;
+        private long idSum;
+    }
+}
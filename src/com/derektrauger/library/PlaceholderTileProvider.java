@@ -0,0 +1,340 @@
+package com.derektrauger.library;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+* TileProvider in front of a CachedTileProvider that never leaves a blank square while a tile is
+* downloaded, if something to draw instead is cached: the four tiles of the next zoom level
+* downsampled and stitched, or the cached tile of a lower zoom level cropped and scaled up. The
+* placeholder is returned at once and the real tile is downloaded on a background thread, zooming
+* in and out is covered instantly and the map does not wait for the network.
+*
+* Google Maps keeps the tiles it got, when real tiles arrive the RefreshListener is told on the
+* main thread, call TileOverlay.clearTileCache() from it so the map asks again. Calls are
+* coalesced, a burst of downloads makes one refresh.
+*
+* The newest downloads run first, those of the tiles on screen, and a download whose placeholder
+* was evicted in the meantime is dropped. A failed download is retried with a growing delay, after
+* the last retry the placeholder is dropped and the tile is requested the usual blocking way.
+*/
+public class PlaceholderTileProvider implements TileProvider {
+
+    public static final int DEFAULT_MAX_ANCESTOR_LEVELS = 3;
+    private static final int DEFAULT_PLACEHOLDER_CACHE_SIZE = 1024 * 1024; // 1MB
+    private static final int DOWNLOAD_THREADS = 2;
+    private static final int REFRESH_DELAY = 250; // ms
+    // Keys of tiles the server does not have, so no placeholder is made for them again
+    private static final int MISSING_TILES = 256;
+    private static final int MAX_RETRIES = 3;
+    private static final int RETRY_DELAY = 1000; // ms, doubled for each failure
+
+    public interface RefreshListener {
+        /**
+        * Real tiles replaced placeholders, call TileOverlay.clearTileCache(). Called on the main thread.
+        */
+        void onRefreshTiles();
+    }
+
+    private final CachedTileProvider tileProvider;
+    private final int maxAncestorLevels;
+    private final ThreadPoolExecutor downloadThreadPool;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // Placeholders by tile key, until the real tile is downloaded
+    private final LruCache<String, Tile> placeholders;
+    private final LruCache<String, Boolean> missingTiles = new LruCache<String, Boolean>(MISSING_TILES);
+    // Failed downloads by tile key
+    private final LruCache<String, Integer> failures = new LruCache<String, Integer>(MISSING_TILES);
+    // Downloads queued or in progress by tile key
+    private final ConcurrentHashMap<String, Boolean> downloads = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong downloadSequence = new AtomicLong();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private volatile RefreshListener listener;
+
+    private final Runnable refresh = new Runnable() {
+        public void run() {
+            refreshScheduled.set(false);
+            final RefreshListener refreshListener = listener;
+            if (refreshListener != null) {
+                refreshListener.onRefreshTiles();
+            }
+        }
+    };
+
+    public PlaceholderTileProvider(CachedTileProvider tileProvider) {
+        this(tileProvider, DEFAULT_MAX_ANCESTOR_LEVELS);
+    }
+
+    /**
+    * @param maxAncestorLevels
+    * Zoom levels looked up for a cached ancestor, a tile n levels up is scaled 2^n times
+    */
+    public PlaceholderTileProvider(CachedTileProvider tileProvider, int maxAncestorLevels) {
+        this.tileProvider = tileProvider;
+        this.maxAncestorLevels = maxAncestorLevels;
+        this.placeholders = new LruCache<String, Tile>(DEFAULT_PLACEHOLDER_CACHE_SIZE) {
+            @Override
+            protected int sizeOf(String key, Tile value) {
+                return value.data.length;
+            }
+        };
+        // Downloads are ordered by Download.compareTo(), newest first
+        this.downloadThreadPool = new ThreadPoolExecutor(DOWNLOAD_THREADS, DOWNLOAD_THREADS, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "PlaceholderTileProvider");
+            }
+        });
+    }
+
+    public void setRefreshListener(RefreshListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        final Tile cached = tileProvider.getCachedTile(x, y, zoom);
+        if (cached != null) {
+            return cached;
+        }
+        final String key = CachedTileProvider.getKey(x, y, zoom);
+        if (missingTiles.get(key) != null) {
+            return NO_TILE;
+        }
+        final Integer failed = failures.get(key);
+        if (failed != null && failed > MAX_RETRIES) {
+            // Retries used up, no placeholder hides the failure any more
+            final Tile tile = tileProvider.getTile(x, y, zoom);
+            if (tile != null) {
+                failures.remove(key);
+            }
+            return tile;
+        }
+
+        Tile placeholder = placeholders.get(key);
+        if (placeholder == null) {
+            placeholder = createPlaceholder(x, y, zoom);
+            if (placeholder == null) {
+                // Nothing to draw instead, wait for the network as usual
+                return tileProvider.getTile(x, y, zoom);
+            }
+            placeholders.put(key, placeholder);
+        }
+        download(x, y, zoom, key);
+        return placeholder;
+    }
+
+    /**
+    * Stops the download threads, the provider cannot be used afterwards.
+    */
+    public void shutdown() {
+        downloadThreadPool.shutdownNow();
+        // The refresh and the pending retries
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    private void download(int x, int y, int zoom, String key) {
+        if (downloads.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            downloadThreadPool.execute(new Download(x, y, zoom, key, downloadSequence.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            // Shut down
+            downloads.remove(key);
+        }
+    }
+
+    private void onDownloadFailed(final int x, final int y, final int zoom, final String key) {
+        final Integer failed = failures.get(key);
+        final int count = failed == null ? 1 : failed + 1;
+        failures.put(key, count);
+        if (count > MAX_RETRIES) {
+            // The map asks again and gets the blocking download, see getTile()
+            placeholders.remove(key);
+            scheduleRefresh();
+            return;
+        }
+        handler.postDelayed(new Runnable() {
+            public void run() {
+                if (placeholders.get(key) != null) {
+                    download(x, y, zoom, key);
+                }
+            }
+        }, RETRY_DELAY << (count - 1));
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(refresh, REFRESH_DELAY);
+        }
+    }
+
+    /**
+    * Builds a placeholder from the cached children, or else from the nearest cached ancestor.
+    *
+    * @return the encoded placeholder, or null if nothing usable is cached
+    */
+    private Tile createPlaceholder(int x, int y, int zoom) {
+        final Tile[] children = new Tile[4];
+        boolean allChildren = true;
+        for (int i = 0; i < 4 && allChildren; i++) {
+            children[i] = tileProvider.getCachedTile(x * 2 + (i & 1), y * 2 + (i >> 1), zoom + 1);
+            allChildren = isDrawable(children[i]);
+        }
+        if (allChildren) {
+            final Tile tile = stitchChildren(children);
+            if (tile != null) {
+                return tile;
+            }
+        }
+
+        for (int levels = 1; levels <= maxAncestorLevels && levels <= zoom; levels++) {
+            final Tile ancestor = tileProvider.getCachedTile(x >> levels, y >> levels, zoom - levels);
+            if (isDrawable(ancestor)) {
+                return scaleAncestor(ancestor, x, y, levels);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDrawable(Tile tile) {
+        return tile != null && tile != NO_TILE && tile.data != null;
+    }
+
+    /**
+    * Draws each child downsampled into its quarter of the tile.
+    */
+    private Tile stitchChildren(Tile[] children) {
+        Bitmap output = null;
+        final Rect destination = new Rect();
+        try {
+            Canvas canvas = null;
+            int width = 0;
+            int height = 0;
+            for (int i = 0; i < 4; i++) {
+                final Bitmap child = BitmapFactory.decodeByteArray(children[i].data, 0, children[i].data.length);
+                if (child == null) {
+                    return null;
+                }
+                if (output == null) {
+                    // Pixels of the source, Tile sizes may be smaller for high density tiles
+                    width = child.getWidth();
+                    height = child.getHeight();
+                    output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    canvas = new Canvas(output);
+                }
+                final int left = (i & 1) * width / 2;
+                final int top = (i >> 1) * height / 2;
+                destination.set(left, top, left + width / 2, top + height / 2);
+                canvas.drawBitmap(child, null, destination, paint);
+                child.recycle();
+            }
+            return encode(output, children[0].width, children[0].height);
+        } finally {
+            if (output != null) {
+                output.recycle();
+            }
+        }
+    }
+
+    /**
+    * Crops the part of the ancestor covering the tile and scales it up to a full tile.
+    */
+    private Tile scaleAncestor(Tile ancestor, int x, int y, int levels) {
+        final Bitmap source = BitmapFactory.decodeByteArray(ancestor.data, 0, ancestor.data.length);
+        if (source == null) {
+            return null;
+        }
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int parts = 1 << levels;
+        final int left = (x & (parts - 1)) * width / parts;
+        final int top = (y & (parts - 1)) * height / parts;
+
+        final Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            new Canvas(output).drawBitmap(source, new Rect(left, top, left + width / parts, top + height / parts),
+                    new Rect(0, 0, width, height), paint);
+            return encode(output, ancestor.width, ancestor.height);
+        } finally {
+            source.recycle();
+            output.recycle();
+        }
+    }
+
+    private final class Download implements Runnable, Comparable<Download> {
+        private final int x;
+        private final int y;
+        private final int zoom;
+        private final String key;
+        private final long sequence;
+
+        private Download(int x, int y, int zoom, String key, long sequence) {
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        public void run() {
+            try {
+                if (placeholders.get(key) == null) {
+                    // Evicted while queued, the tile has long left the screen
+                    return;
+                }
+                final Tile tile = tileProvider.getTile(x, y, zoom);
+                if (tile == null) {
+                    onDownloadFailed(x, y, zoom, key);
+                    return;
+                }
+                if (tile == NO_TILE) {
+                    missingTiles.put(key, Boolean.TRUE);
+                }
+                failures.remove(key);
+                placeholders.remove(key);
+                scheduleRefresh();
+            } finally {
+                downloads.remove(key);
+            }
+        }
+
+        public int compareTo(Download other) {
+            return sequence < other.sequence ? 1 : sequence > other.sequence ? -1 : 0;
+        }
+    }
+
+    // PNG keeps the transparency of overlay tiles
+    private static Tile encode(Bitmap bitmap, int width, int height) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        return new Tile(width, height, out.toByteArray());
+    }
+}
@@ -0,0 +1,333 @@
+package com.derektrauger.library;
+
+import java.util.Arrays;
+
+/**
+* Grid index of points in projected world coordinates, for finding the points inside the visible
+* region without testing all of them. Points are projected once, with MapUtils.getProjection(0),
+* and stored in primitive arrays. The grid cells are the tiles of one zoom level, only cells
+* holding points exist, in a map keyed by primitive longs.
+*
+* Points are identified by the int returned by add(), ids of removed points are reused.
+* Not thread safe, use it from one thread or synchronize.
+*/
+public class SpatialIndex {
+
+    public static final int DEFAULT_GRID_ZOOM = 12;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Receives the ids of the points found by a query, return false to stop the query
+    public interface PointVisitor {
+        boolean visitPoint(int id);
+    }
+
+    private final MapUtils.Projection projection = MapUtils.getProjection(0);
+    private final int gridZoom;
+    // Size of a grid cell in zoom 0 pixels
+    private final double cellSize;
+    private final LongHashMap<Cell> cells = new LongHashMap<Cell>();
+
+    /* Points by id */
+    private double[] lats = new double[INITIAL_CAPACITY];
+    private double[] lons = new double[INITIAL_CAPACITY];
+    // Zoom 0 world pixels, multiply by 2^zoom for the pixels of a zoom level
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int capacity;
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int size;
+    // Points visited by the running query
+    private int visited;
+
+    public SpatialIndex() {
+        this(DEFAULT_GRID_ZOOM);
+    }
+
+    /**
+    * @param gridZoom
+    * Zoom level whose tiles are the grid cells. Higher levels make queries of small regions
+    * faster and cost more cells, about the zoom the region is usually viewed at works well.
+    */
+    public SpatialIndex(int gridZoom) {
+        this.gridZoom = gridZoom;
+        this.cellSize = MapUtils.TILE_SIZE / Math.pow(2, gridZoom);
+    }
+
+    public int add(double lat, double lon) {
+        final int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (capacity == lats.length) {
+                grow(capacity * 2);
+            }
+            id = capacity++;
+        }
+
+        lats[id] = lat;
+        lons[id] = lon;
+        xs[id] = projection.LonToX(lon);
+        ys[id] = projection.LatToY(clampLatitude(lat));
+        used[id] = true;
+        size++;
+
+        final long key = getCellKey(xs[id], ys[id]);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key, cell);
+        }
+        cell.add(id);
+        return id;
+    }
+
+    /**
+    * @return false if there is no point with this id
+    */
+    public boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+
+        final long key = getCellKey(xs[id], ys[id]);
+        final Cell cell = cells.get(key);
+        cell.remove(id);
+        if (cell.size == 0) {
+            cells.remove(key);
+        }
+
+        used[id] = false;
+        size--;
+        if (freeCount == freeIds.length) {
+            final int[] newFreeIds = new int[freeIds.length * 2];
+            System.arraycopy(freeIds, 0, newFreeIds, 0, freeCount);
+            freeIds = newFreeIds;
+        }
+        freeIds[freeCount++] = id;
+        return true;
+    }
+
+    /**
+    * Moves a point, keeping its id.
+    */
+    public void move(int id, double lat, double lon) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("No point " + id);
+        }
+
+        final double x = projection.LonToX(lon);
+        final double y = projection.LatToY(clampLatitude(lat));
+        final long oldKey = getCellKey(xs[id], ys[id]);
+        final long newKey = getCellKey(x, y);
+        if (oldKey != newKey) {
+            final Cell oldCell = cells.get(oldKey);
+            oldCell.remove(id);
+            if (oldCell.size == 0) {
+                cells.remove(oldKey);
+            }
+            Cell newCell = cells.get(newKey);
+            if (newCell == null) {
+                newCell = new Cell();
+                cells.put(newKey, newCell);
+            }
+            newCell.add(id);
+        }
+
+        lats[id] = lat;
+        lons[id] = lon;
+        xs[id] = x;
+        ys[id] = y;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < capacity && used[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int id) {
+        return lats[id];
+    }
+
+    public double getLongitude(int id) {
+        return lons[id];
+    }
+
+    /**
+    * Zoom 0 world x of the point, in pixels, see MapUtils.Projection.
+    */
+    public double getWorldX(int id) {
+        return xs[id];
+    }
+
+    /**
+    * Zoom 0 world y of the point, in pixels, see MapUtils.Projection.
+    */
+    public double getWorldY(int id) {
+        return ys[id];
+    }
+
+    /**
+    * Visits the points inside the lat lon box, e.g. the visible region of the map. West greater
+    * than east means the box crosses the antimeridian.
+    *
+    * @return the number of points visited
+    */
+    public int query(double south, double west, double north, double east, PointVisitor visitor) {
+        final double minY = projection.LatToY(clampLatitude(north));
+        final double maxY = projection.LatToY(clampLatitude(south));
+        visited = 0;
+        if (west > east) {
+            if (queryCells(projection.LonToX(west), minY, projection.LonToX(180), maxY, visitor)) {
+                queryCells(projection.LonToX(-180), minY, projection.LonToX(east), maxY, visitor);
+            }
+        } else {
+            queryCells(projection.LonToX(west), minY, projection.LonToX(east), maxY, visitor);
+        }
+        return visited;
+    }
+
+    /**
+    * Visits the points inside the box of zoom 0 world pixels.
+    *
+    * @return the number of points visited
+    */
+    int queryWorld(double minX, double minY, double maxX, double maxY, PointVisitor visitor) {
+        visited = 0;
+        queryCells(minX, minY, maxX, maxY, visitor);
+        return visited;
+    }
+
+    /**
+    * Visits the points inside the box of zoom 0 world pixels, counting them in visited.
+    *
+    * @return false if the visitor stopped the query
+    */
+    private boolean queryCells(double minX, double minY, double maxX, double maxY, PointVisitor visitor) {
+        final int minCellX = (int) Math.floor(minX / cellSize);
+        final int maxCellX = (int) Math.floor(maxX / cellSize);
+        final int minCellY = (int) Math.floor(minY / cellSize);
+        final int maxCellY = (int) Math.floor(maxY / cellSize);
+
+        final long rangeCells = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (rangeCells <= cells.size()) {
+            // Small region, look up its cells
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                    final Cell cell = cells.get(getCellKey(cellX, cellY));
+                    if (cell != null && !cell.query(minX, minY, maxX, maxY, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        } else {
+            // Large region, fewer cells exist than it spans
+            for (int slot = 0; slot < cells.capacity(); slot++) {
+                final Cell cell = cells.valueAt(slot);
+                if (cell == null) {
+                    continue;
+                }
+                final long key = cells.keyAt(slot);
+                final int cellX = (int) (key >> 32);
+                final int cellY = (int) key;
+                if (cellX >= minCellX && cellX <= maxCellX && cellY >= minCellY && cellY <= maxCellY
+                        && !cell.query(minX, minY, maxX, maxY, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        cells.clear();
+        Arrays.fill(used, 0, capacity, false);
+        capacity = 0;
+        freeCount = 0;
+        size = 0;
+    }
+
+    /**
+    * Ids of the points are below this, for iterating over all of them with contains().
+    */
+    int getIdLimit() {
+        return capacity;
+    }
+
+    public int getGridZoom() {
+        return gridZoom;
+    }
+
+    private long getCellKey(double x, double y) {
+        return getCellKey((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize));
+    }
+
+    private static long getCellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+    static double clampLatitude(double lat) {
+        return Math.max(-MapUtils.MAX_LATITUDE, Math.min(MapUtils.MAX_LATITUDE, lat));
+    }
+
+    private void grow(int newCapacity) {
+        lats = copyOf(lats, newCapacity);
+        lons = copyOf(lons, newCapacity);
+        xs = copyOf(xs, newCapacity);
+        ys = copyOf(ys, newCapacity);
+        final boolean[] newUsed = new boolean[newCapacity];
+        System.arraycopy(used, 0, newUsed, 0, used.length);
+        used = newUsed;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        final double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    /**
+    * Ids of the points of one grid cell, unordered.
+    */
+    private final class Cell {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                final int[] newIds = new int[size * 2];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                ids = newIds;
+            }
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return;
+                }
+            }
+        }
+
+        boolean query(double minX, double minY, double maxX, double maxY, PointVisitor visitor) {
+            for (int i = 0; i < size; i++) {
+                final int id = ids[i];
+                final double x = xs[id];
+                final double y = ys[id];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    visited++;
+                    if (!visitor.visitPoint(id)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.derektrauger.library;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+/**
+* Downloads the tiles of a region from an XYZUrlTileProvider into a single file archive, read back
+* by ArchiveTileProvider. One file copies and opens much faster than the loose files of a disk
+* cache, and identical small tiles, e.g. sea or empty overlay tiles, are stored once.
+*
+* Layout, big endian:
+*
+* header  HEADER_SIZE bytes: magic, version, tile size, zoom range, bounds, tile count, index offset
+* data    the encoded tiles as downloaded, back to back. A tile never crosses a multiple of the
+*         segment size so readers can map the file in segments.
+* index   one entry per tile sorted by key: key (zoom, x, y), offset and length of the tile data
+*
+* write() blocks, call it from a background thread.
+*/
+public class TileArchiveWriter {
+
+    private static final String LOG_TAG = "TileArchiveWriter";
+
+    static final int MAGIC = 0x54494c41; // "TILA"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    static final int ENTRY_SIZE = 20;
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    static final int MAX_ZOOM = 29;
+
+    /* Header offsets */
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_TILE_WIDTH = 8;
+    static final int HEADER_TILE_HEIGHT = 12;
+    static final int HEADER_MIN_ZOOM = 16;
+    static final int HEADER_MAX_ZOOM = 20;
+    static final int HEADER_SEGMENT_SIZE = 24;
+    static final int HEADER_TILE_COUNT = 28;
+    static final int HEADER_INDEX_OFFSET = 32;
+    static final int HEADER_SOUTH = 40;
+    static final int HEADER_WEST = 48;
+    static final int HEADER_NORTH = 56;
+    static final int HEADER_EAST = 64;
+
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final int TIMEOUT = 15000; // ms
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_RETRIES = 2;
+    // Tiles up to this size are deduplicated, larger ones are rarely identical
+    private static final int MAX_SHARED_TILE_SIZE = 4 * 1024;
+
+    public interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    private final XYZUrlTileProvider source;
+    private int threads = DEFAULT_THREADS;
+    private int retries = DEFAULT_RETRIES;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private ProgressListener listener;
+    private boolean allowPartial;
+    private long failedTiles;
+
+    public TileArchiveWriter(XYZUrlTileProvider source) {
+        this.source = source;
+    }
+
+    /**
+    * Concurrent downloads, tiles are still written in order
+    */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+    * Attempts after the first failed download of a tile
+    */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+    * Whether tiles that could not be downloaded after the retries are left out of the archive,
+    * false by default: write() then fails at the first one and the file is not replaced, so an
+    * offline map never has holes nobody knows about. Check getFailedTiles() when allowing them.
+    */
+    public void setAllowPartial(boolean allowPartial) {
+        this.allowPartial = allowPartial;
+    }
+
+    // Small segments exercise the segment boundaries without writing gigabytes
+    void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+    * Tiles of the last write() that could not be downloaded and are missing from the archive, see
+    * setAllowPartial().
+    */
+    public long getFailedTiles() {
+        return failedTiles;
+    }
+
+    /**
+    * Downloads the tiles intersecting the lat lon box at each zoom level of the range into the
+    * file, replacing it once complete. Tiles the server does not have are left out. West greater
+    * than east means the box crosses the antimeridian.
+    *
+    * @return the number of tiles written
+    * @throws IOException
+    * if the archive cannot be written, or a tile could not be downloaded and partial archives
+    * are not allowed. The file is left as it was.
+    */
+    public long write(File file, double south, double west, double north, double east, int minZoom, int maxZoom) throws IOException {
+        if (minZoom < 0 || maxZoom < minZoom || maxZoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Invalid zoom range " + minZoom + "-" + maxZoom);
+        }
+
+        failedTiles = 0;
+        final int[] range = new int[4];
+        long total = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            MapUtils.LatLonBoundsToTileRange(south, west, north, east, zoom, range);
+            final int[] columns = getColumns(range, zoom);
+            for (int part = 0; part < columns.length; part += 2) {
+                total += (long) (columns[part + 1] - columns[part] + 1) * (range[MapUtils.RANGE_MAX_Y] - range[MapUtils.RANGE_MIN_Y] + 1);
+            }
+        }
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final RandomAccessFile out = new RandomAccessFile(tmpFile, "rw");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final Index index = new Index();
+        boolean written = false;
+        try {
+            out.setLength(0);
+            out.seek(HEADER_SIZE);
+            final Writer writer = new Writer(out, index);
+
+            // Tiles are queued in key order, zoom, then x, then y, so the index needs no sorting.
+            // A window of downloads runs ahead of the one being written.
+            final ArrayDeque<Future<byte[]>> downloads = new ArrayDeque<Future<byte[]>>();
+            final ArrayDeque<Long> keys = new ArrayDeque<Long>();
+            final int window = threads * 4;
+            long done = 0;
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                MapUtils.LatLonBoundsToTileRange(south, west, north, east, zoom, range);
+                final int[] columns = getColumns(range, zoom);
+                for (int part = 0; part < columns.length; part += 2) {
+                    for (int x = columns[part]; x <= columns[part + 1]; x++) {
+                        for (int y = range[MapUtils.RANGE_MIN_Y]; y <= range[MapUtils.RANGE_MAX_Y]; y++) {
+                            if (downloads.size() == window) {
+                                writer.write(keys.poll(), get(downloads.poll()));
+                                notifyProgress(++done, total);
+                            }
+                            keys.add(getKey(x, y, zoom));
+                            downloads.add(executor.submit(new Download(x, y, zoom)));
+                        }
+                    }
+                }
+            }
+            while (!downloads.isEmpty()) {
+                writer.write(keys.poll(), get(downloads.poll()));
+                notifyProgress(++done, total);
+            }
+
+            final long indexOffset = out.getFilePointer();
+            index.write(out);
+            writeHeader(out, index.size, indexOffset, south, west, north, east, minZoom, maxZoom);
+            out.getFD().sync();
+            written = true;
+        } finally {
+            executor.shutdownNow();
+            out.close();
+            if (!written) {
+                tmpFile.delete();
+            }
+        }
+
+        if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+        return index.size;
+    }
+
+    /**
+    * Returns the columns of the tile range as pairs of first and last x. A range across the
+    * antimeridian is split so x still ascends, the columns from 0 first.
+    */
+    private static int[] getColumns(int[] range, int zoom) {
+        final int tiles = 1 << zoom;
+        final int minX = range[MapUtils.RANGE_MIN_X];
+        final int maxX = range[MapUtils.RANGE_MAX_X];
+        if (maxX < tiles) {
+            return new int[] { minX, maxX };
+        }
+        return new int[] { 0, maxX - tiles, minX, tiles - 1 };
+    }
+
+    private void notifyProgress(long done, long total) {
+        if (listener != null) {
+            listener.onProgress(done, total);
+        }
+    }
+
+    private static byte[] get(Future<byte[]> download) throws IOException {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Download failed: " + e.getCause());
+        }
+    }
+
+    private void writeHeader(RandomAccessFile out, int tileCount, long indexOffset,
+            double south, double west, double north, double east, int minZoom, int maxZoom) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(HEADER_MAGIC, MAGIC);
+        header.putInt(HEADER_VERSION, VERSION);
+        header.putInt(HEADER_TILE_WIDTH, source.getTileWidth());
+        header.putInt(HEADER_TILE_HEIGHT, source.getTileHeight());
+        header.putInt(HEADER_MIN_ZOOM, minZoom);
+        header.putInt(HEADER_MAX_ZOOM, maxZoom);
+        header.putInt(HEADER_SEGMENT_SIZE, segmentSize);
+        header.putInt(HEADER_TILE_COUNT, tileCount);
+        header.putLong(HEADER_INDEX_OFFSET, indexOffset);
+        header.putDouble(HEADER_SOUTH, south);
+        header.putDouble(HEADER_WEST, west);
+        header.putDouble(HEADER_NORTH, north);
+        header.putDouble(HEADER_EAST, east);
+        out.seek(0);
+        out.write(header.array());
+    }
+
+    /**
+    * Index key of a tile, keys sort by zoom, then x, then y.
+    */
+    static long getKey(int x, int y, int zoom) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    /**
+    * Downloads one tile, retrying failures.
+    *
+    * @return the encoded tile, an empty array if the server does not have it, or null if it
+    * could not be downloaded
+    */
+    private byte[] download(int x, int y, int zoom) {
+        final URL url = source.getTileUrl(x, y, zoom);
+        if (url == null) {
+            return new byte[0];
+        }
+
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            HttpURLConnection urlConnection = null;
+            InputStream inputStream = null;
+            try {
+                urlConnection = (HttpURLConnection) url.openConnection();
+                urlConnection.setConnectTimeout(TIMEOUT);
+                urlConnection.setReadTimeout(TIMEOUT);
+                urlConnection.setRequestProperty("Accept-Encoding", "");
+                final int responseCode = urlConnection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                    return new byte[0];
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    Log.w(LOG_TAG, "Failed to download tile " + url + ": HTTP " + responseCode);
+                    continue;
+                }
+
+                inputStream = new BufferedInputStream(urlConnection.getInputStream(), IO_BUFFER_SIZE);
+                final int length = urlConnection.getContentLength();
+                final ByteArrayOutputStream data = new ByteArrayOutputStream(length > 0 ? length : IO_BUFFER_SIZE);
+                final byte[] buffer = new byte[IO_BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    data.write(buffer, 0, read);
+                }
+                return data.toByteArray();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to download tile " + url + ": " + e);
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                if (urlConnection != null) {
+                    urlConnection.disconnect();
+                }
+            }
+        }
+        return null;
+    }
+
+    private final class Download implements Callable<byte[]> {
+        private final int x;
+        private final int y;
+        private final int zoom;
+
+        private Download(int x, int y, int zoom) {
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+        }
+
+        public byte[] call() {
+            return download(x, y, zoom);
+        }
+    }
+
+    /**
+    * Appends the tiles to the data section and records them in the index.
+    */
+    private final class Writer {
+        private final RandomAccessFile out;
+        private final Index index;
+        private final MessageDigest digest;
+        // Offset and length of the small tiles written so far, by MD5 of their data
+        private final Map<ByteBuffer, long[]> sharedTiles = new HashMap<ByteBuffer, long[]>();
+
+        private Writer(RandomAccessFile out, Index index) {
+            this.out = out;
+            this.index = index;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(long key, byte[] data) throws IOException {
+            if (data == null) {
+                failedTiles++;
+                if (!allowPartial) {
+                    final int mask = (1 << MAX_ZOOM) - 1;
+                    throw new IOException("Failed to download tile " + (int) (key >>> 29 & mask) + "," + (int) (key & mask)
+                            + " of zoom " + (int) (key >>> 58));
+                }
+                return;
+            }
+            if (data.length == 0) {
+                return;
+            }
+            if (data.length > segmentSize) {
+                throw new IOException("Tile of " + data.length + " bytes exceeds the segment size");
+            }
+
+            ByteBuffer hash = null;
+            if (data.length <= MAX_SHARED_TILE_SIZE) {
+                hash = ByteBuffer.wrap(digest.digest(data));
+                final long[] shared = sharedTiles.get(hash);
+                if (shared != null) {
+                    index.add(key, shared[0], (int) shared[1]);
+                    return;
+                }
+            }
+
+            long offset = out.getFilePointer();
+            final long segmentEnd = (offset / segmentSize + 1) * segmentSize;
+            if (offset + data.length > segmentEnd) {
+                // Pad to the next segment, readers map each segment separately
+                out.seek(segmentEnd);
+                offset = segmentEnd;
+            }
+            out.write(data);
+            index.add(key, offset, data.length);
+            if (hash != null) {
+                sharedTiles.put(hash, new long[] { offset, data.length });
+            }
+        }
+    }
+
+    /**
+    * Index entries in primitive arrays, added in key order.
+    */
+    private static final class Index {
+        private long[] keys = new long[1024];
+        private long[] offsets = new long[1024];
+        private int[] lengths = new int[1024];
+        private int size;
+
+        void add(long key, long offset, int length) {
+            if (size == keys.length) {
+                final int capacity = size * 2;
+                final long[] newKeys = new long[capacity];
+                final long[] newOffsets = new long[capacity];
+                final int[] newLengths = new int[capacity];
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(offsets, 0, newOffsets, 0, size);
+                System.arraycopy(lengths, 0, newLengths, 0, size);
+                keys = newKeys;
+                offsets = newOffsets;
+                lengths = newLengths;
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+
+        void write(RandomAccessFile out) throws IOException {
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 4096);
+            channel.position(out.getFilePointer());
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.putLong(keys[i]).putLong(offsets[i]).putInt(lengths[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.derektrauger.library;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Process;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+* Fills a CachedTileProvider ahead of Google Maps: the visible tiles, a ring around them that is
+* wider on the side the camera is panning to, and the tiles of the neighbouring zoom levels. Tiles
+* are fetched on low priority background threads, nearest first, and tiles that left the window
+* are dropped from the queue when the camera moves on.
+*
+* Call update() from GoogleMap.OnCameraChangeListener with the size of the map view in density
+* independent pixels, Maps draws tiles at 256dp. Bearing is accounted for, tilt is not: the far
+* side of a tilted map shows tiles from further away than the prefetched window.
+*/
+public class TilePrefetcher {
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_RING = 1;
+    private static final int DEFAULT_LEAD = 2;
+    private static final int MAX_ZOOM = 21;
+
+    /* Ranks, lower is fetched first */
+    private static final int RANK_VISIBLE = 0;
+    // Ring tiles get their distance to the viewport times two, plus one behind the panning direction
+    private static final int RANK_LOWER_ZOOM = 3;
+    private static final int RANK_HIGHER_ZOOM = 5;
+
+    private final CachedTileProvider tileProvider;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    // Queued and running jobs by tile key, guarded by this
+    private final Map<String, TileJob> jobs = new HashMap<String, TileJob>();
+    // Tiles of the current window already fetched, guarded by this
+    private final Set<String> fetched = new HashSet<String>();
+
+    private int ring = DEFAULT_RING;
+    private int lead = DEFAULT_LEAD;
+    private boolean neighbourZooms = true;
+    private int minZoom = 0;
+    private int maxZoom = MAX_ZOOM;
+
+    private int lastZoom = -1;
+    private double lastCenterX;
+    private double lastCenterY;
+
+    public TilePrefetcher(CachedTileProvider tileProvider) {
+        this(tileProvider, DEFAULT_THREADS);
+    }
+
+    public TilePrefetcher(CachedTileProvider tileProvider, int threads) {
+        this.tileProvider = tileProvider;
+        // TileJobs are ordered by rank, they have to be queued with execute() rather than submit()
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                                runnable.run();
+                            }
+                        }, "TilePrefetcher");
+                    }
+                });
+    }
+
+    /**
+    * Tiles prefetched around the viewport on each side
+    */
+    public void setRing(int ring) {
+        this.ring = ring;
+    }
+
+    /**
+    * Additional tiles prefetched on the side the camera is panning to
+    */
+    public void setLead(int lead) {
+        this.lead = lead;
+    }
+
+    /**
+    * Whether the tiles of the zoom levels above and below are prefetched, for zooming in and out
+    */
+    public void setNeighbourZooms(boolean neighbourZooms) {
+        this.neighbourZooms = neighbourZooms;
+    }
+
+    /**
+    * Zoom levels the tile source has tiles for
+    */
+    public void setZoomRange(int minZoom, int maxZoom) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+    }
+
+    public void update(CameraPosition camera, int viewportWidth, int viewportHeight) {
+        update(camera.target, camera.zoom, camera.bearing, viewportWidth, viewportHeight);
+    }
+
+    /**
+    * Queues the tiles of the window around the camera that are not cached yet, and cancels the
+    * queued tiles outside of it.
+    *
+    * @param viewportWidth
+    * Width of the map view in density independent pixels
+    */
+    public synchronized void update(LatLng target, float zoom, float bearing, int viewportWidth, int viewportHeight) {
+        final int tileZoom = Math.max(minZoom, Math.min(maxZoom, Math.round(zoom)));
+        // Size of the viewport in pixels of the tile zoom level
+        final double scale = Math.pow(2, tileZoom - zoom);
+        double halfWidth = viewportWidth * scale / 2;
+        double halfHeight = viewportHeight * scale / 2;
+        if (bearing % 360 != 0) {
+            // A rotated viewport fits in the circle around it
+            halfWidth = halfHeight = Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight);
+        }
+
+        final MapUtils.Projection projection = MapUtils.getProjection(tileZoom);
+        final double centerX = projection.LonToX(target.longitude);
+        final double centerY = projection.LatToY(target.latitude);
+        final int minX = (int) Math.floor((centerX - halfWidth) / MapUtils.TILE_SIZE);
+        final int maxX = (int) Math.floor((centerX + halfWidth) / MapUtils.TILE_SIZE);
+        final int minY = (int) Math.floor((centerY - halfHeight) / MapUtils.TILE_SIZE);
+        final int maxY = (int) Math.floor((centerY + halfHeight) / MapUtils.TILE_SIZE);
+
+        // Panning direction since the last update, at the same zoom only
+        int panX = 0;
+        int panY = 0;
+        if (tileZoom == lastZoom) {
+            panX = (int) Math.signum(centerX - lastCenterX);
+            panY = (int) Math.signum(centerY - lastCenterY);
+        }
+        lastZoom = tileZoom;
+        lastCenterX = centerX;
+        lastCenterY = centerY;
+
+        final Map<String, Window> windows = new HashMap<String, Window>();
+        addWindow(windows, tileZoom, minX, minY, maxX, maxY, panX, panY, ring, lead, RANK_VISIBLE);
+        if (neighbourZooms) {
+            if (tileZoom - 1 >= minZoom) {
+                addWindow(windows, tileZoom - 1, minX >> 1, minY >> 1, maxX >> 1, maxY >> 1, 0, 0, 0, 0, RANK_LOWER_ZOOM);
+            }
+            if (tileZoom + 1 <= maxZoom) {
+                addWindow(windows, tileZoom + 1, minX * 2, minY * 2, maxX * 2 + 1, maxY * 2 + 1, 0, 0, 0, 0, RANK_HIGHER_ZOOM);
+            }
+        }
+
+        // Forget the fetched tiles that left the window, they may be evicted before it comes back
+        fetched.retainAll(windows.keySet());
+        windows.keySet().removeAll(fetched);
+
+        // Drop what left the window, re-rank what moved within it
+        final Iterator<TileJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            final TileJob job = iterator.next();
+            final Window window = windows.remove(job.key);
+            if (window == null) {
+                job.cancelled = true;
+                executor.remove(job);
+                iterator.remove();
+            } else if (window.rank != job.rank && executor.remove(job)) {
+                // Jobs can only be re-ranked while still queued, remove() fails once a worker took them
+                final TileJob reranked = new TileJob(job.key, job.x, job.y, job.zoom, window.rank, sequence.getAndIncrement());
+                jobs.put(job.key, reranked);
+                executor.execute(reranked);
+            }
+        }
+
+        for (Window window : windows.values()) {
+            final TileJob job = new TileJob(window.key, window.x, window.y, window.zoom, window.rank, sequence.getAndIncrement());
+            jobs.put(job.key, job);
+            executor.execute(job);
+        }
+    }
+
+    /**
+    * Adds the tiles of the rectangle, extended by the ring and by the lead in the pan direction.
+    * X wraps around the antimeridian, Y is clamped to the map.
+    */
+    private static void addWindow(Map<String, Window> windows, int zoom, int minX, int minY, int maxX, int maxY,
+            int panX, int panY, int ring, int lead, int baseRank) {
+        final int tiles = 1 << zoom;
+        final int left = minX - ring - (panX < 0 ? lead : 0);
+        final int right = maxX + ring + (panX > 0 ? lead : 0);
+        final int top = Math.max(0, minY - ring - (panY < 0 ? lead : 0));
+        final int bottom = Math.min(tiles - 1, maxY + ring + (panY > 0 ? lead : 0));
+
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right && x - left < tiles; x++) {
+                final int dx = x < minX ? minX - x : x > maxX ? x - maxX : 0;
+                final int dy = y < minY ? minY - y : y > maxY ? y - maxY : 0;
+                final int distance = Math.max(dx, dy);
+                int rank = baseRank;
+                if (distance > 0) {
+                    final boolean ahead = (panX > 0 && x > maxX) || (panX < 0 && x < minX)
+                            || (panY > 0 && y > maxY) || (panY < 0 && y < minY);
+                    rank += distance * 2 + (ahead ? 0 : 1);
+                }
+
+                final int wrappedX = ((x % tiles) + tiles) % tiles;
+                final String key = CachedTileProvider.getKey(wrappedX, y, zoom);
+                final Window existing = windows.get(key);
+                if (existing == null || existing.rank > rank) {
+                    windows.put(key, new Window(key, wrappedX, y, zoom, rank));
+                }
+            }
+        }
+    }
+
+    /**
+    * Cancels all queued tiles, e.g. when the map is hidden.
+    */
+    public synchronized void cancel() {
+        for (TileJob job : jobs.values()) {
+            job.cancelled = true;
+            executor.remove(job);
+        }
+        jobs.clear();
+        fetched.clear();
+        lastZoom = -1;
+    }
+
+    /**
+    * Cancels the queued tiles and stops the threads, the prefetcher cannot be used afterwards.
+    */
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    /**
+    * Keys of the tiles queued or being fetched, for diagnostics.
+    */
+    public synchronized List<String> getPendingTiles() {
+        return new ArrayList<String>(jobs.keySet());
+    }
+
+    private synchronized void onJobFinished(TileJob job, boolean cached) {
+        if (jobs.get(job.key) == job) {
+            jobs.remove(job.key);
+            if (cached) {
+                fetched.add(job.key);
+            }
+        }
+    }
+
+    private static final class Window {
+        private final String key;
+        private final int x;
+        private final int y;
+        private final int zoom;
+        private final int rank;
+
+        private Window(String key, int x, int y, int zoom, int rank) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+            this.rank = rank;
+        }
+    }
+
+    private final class TileJob implements Runnable, Comparable<TileJob> {
+        private final String key;
+        private final int x;
+        private final int y;
+        private final int zoom;
+        private final int rank;
+        // Orders jobs of the same rank first in, first out
+        private final long sequence;
+        private volatile boolean cancelled;
+
+        private TileJob(String key, int x, int y, int zoom, int rank, long sequence) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+            this.rank = rank;
+            this.sequence = sequence;
+        }
+
+        public void run() {
+            boolean cached = false;
+            try {
+                if (!cancelled) {
+                    cached = tileProvider.prefetchTile(x, y, zoom);
+                }
+            } finally {
+                onJobFinished(this, cached);
+            }
+        }
+
+        public int compareTo(TileJob other) {
+            if (rank != other.rank) {
+                return rank < other.rank ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : sequence > other.sequence ? 1 : 0;
+        }
+    }
+}
@@ -2,25 +2,200 @@ package com.derektrauger.library;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
 
 import com.google.android.gms.maps.model.UrlTileProvider;
 
+/**
+* UrlTileProvider building tile URLs from a template. The template is parsed once, tile URLs are
+* built into a per thread buffer. Placeholders:
+*
+* {z}, {x}, {y}  zoom and tile coordinates
+* {-y}           inverted y of TMS sources
+* {q}            Bing style quadkey
+* {s}            subdomain, rotated over the tiles so requests spread across hosts
+*
+* Other text, including unknown placeholders, is kept as is.
+*/
 public class XYZUrlTileProvider extends UrlTileProvider {
 
-private String baseUrl;
+private static final String LOG_TAG = "XYZUrlTileProvider";
+private static final String[] DEFAULT_SUBDOMAINS = { "a", "b", "c" };
+
+/* Segment types */
+private static final int LITERAL = 0;
+private static final int ZOOM = 1;
+private static final int X = 2;
+private static final int Y = 3;
+private static final int INVERTED_Y = 4;
+private static final int QUADKEY = 5;
+private static final int SUBDOMAIN = 6;
+
+private final String baseUrl;
+private final int width;
+private final int height;
+private final String[] subdomains;
+private final int[] segmentTypes;
+// Text of the LITERAL segments, null for placeholders
+private final String[] segmentLiterals;
+
+private final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+        return new StringBuilder(baseUrl.length() + 32);
+    }
+};
 
 public XYZUrlTileProvider(int width, int height, String url) {
+    this(width, height, url, DEFAULT_SUBDOMAINS);
+}
+
+/**
+* @param subdomains
+* Values of the {s} placeholder, e.g. "a", "b", "c" or "t0", "t1", "t2", "t3"
+* @throws IllegalArgumentException
+* if the template does not produce valid URLs
+*/
+public XYZUrlTileProvider(int width, int height, String url, String[] subdomains) {
     super(width, height);
+    if (subdomains == null || subdomains.length == 0) {
+        throw new IllegalArgumentException("At least one subdomain is required");
+    }
     this.baseUrl = url;
+    this.width = width;
+    this.height = height;
+    this.subdomains = subdomains.clone();
+
+    final List<Integer> types = new ArrayList<Integer>();
+    final List<String> literals = new ArrayList<String>();
+    int start = 0;
+    int literalStart = 0;
+    while ((start = url.indexOf('{', start)) >= 0) {
+        final int end = url.indexOf('}', start);
+        if (end < 0) {
+            break;
+        }
+        final int type = getPlaceholderType(url.substring(start + 1, end));
+        if (type == LITERAL) {
+            start++;
+            continue;
+        }
+        if (start > literalStart) {
+            types.add(LITERAL);
+            literals.add(url.substring(literalStart, start));
+        }
+        types.add(type);
+        literals.add(null);
+        start = literalStart = end + 1;
+    }
+    if (literalStart < url.length()) {
+        types.add(LITERAL);
+        literals.add(url.substring(literalStart));
+    }
+
+    segmentTypes = new int[types.size()];
+    for (int i = 0; i < segmentTypes.length; i++) {
+        segmentTypes[i] = types.get(i);
+    }
+    segmentLiterals = literals.toArray(new String[literals.size()]);
+
+    try {
+        new URL(buildUrl(0, 0, 0));
+    } catch (MalformedURLException e) {
+        throw new IllegalArgumentException("Invalid tile URL template: " + url, e);
+    }
+}
+
+private static int getPlaceholderType(String name) {
+    if ("z".equals(name)) {
+        return ZOOM;
+    } else if ("x".equals(name)) {
+        return X;
+    } else if ("y".equals(name)) {
+        return Y;
+    } else if ("-y".equals(name)) {
+        return INVERTED_Y;
+    } else if ("q".equals(name)) {
+        return QUADKEY;
+    } else if ("s".equals(name)) {
+        return SUBDOMAIN;
+    }
+    return LITERAL;
+}
+
+public int getTileWidth() {
+    return width;
+}
+
+public int getTileHeight() {
+    return height;
 }
 
 @Override
 public URL getTileUrl(int x, int y, int zoom) {
+    final String url = buildUrl(x, y, zoom);
     try {
-        return new URL(baseUrl.replace("{z}", ""+zoom).replace("{x}",""+x).replace("{y}",""+y));
+        return new URL(url);
     } catch (MalformedURLException e) {
-        e.printStackTrace();
+        // The template was validated, only odd coordinates can get here
+        Log.e(LOG_TAG, "Invalid tile URL " + url, e);
     }
     return null;
 }
+
+/**
+* Returns the URL of the tile as a string, without creating a URL.
+*/
+public String buildUrl(int x, int y, int zoom) {
+    final StringBuilder sb = builders.get();
+    sb.setLength(0);
+    for (int i = 0; i < segmentTypes.length; i++) {
+        switch (segmentTypes[i]) {
+        case LITERAL:
+            sb.append(segmentLiterals[i]);
+            break;
+        case ZOOM:
+            sb.append(zoom);
+            break;
+        case X:
+            sb.append(x);
+            break;
+        case Y:
+            sb.append(y);
+            break;
+        case INVERTED_Y:
+            sb.append((1 << zoom) - 1 - y);
+            break;
+        case QUADKEY:
+            appendQuadKey(sb, x, y, zoom);
+            break;
+        case SUBDOMAIN:
+            // The same tile always gets the same host, so HTTP caches keep working
+            sb.append(subdomains[((x + y) % subdomains.length + subdomains.length) % subdomains.length]);
+            break;
+        }
+    }
+    return sb.toString();
+}
+
+/**
+* Appends the quadkey of the tile: one base 4 digit per zoom level, from the most significant
+* bit, x contributing 1 and y 2. Zoom 0 has the empty quadkey.
+*/
+static void appendQuadKey(StringBuilder sb, int x, int y, int zoom) {
+    for (int i = zoom; i > 0; i--) {
+        final int mask = 1 << (i - 1);
+        int digit = '0';
+        if ((x & mask) != 0) {
+            digit++;
+        }
+        if ((y & mask) != 0) {
+            digit += 2;
+        }
+        sb.append((char) digit);
+    }
+}
 }
@@ -8,6 +8,8 @@ import android.widget.HorizontalScrollView;
  * Description:
  * ObservableScrollView extends HorizontalScrollView to enable tracking of changes to the 
  * ScrollView's position via the onScrollChanged event.
+ * When a VisibleRangeListener is set, the range of children of the content layout that are on screen,
+ * extended by the lookahead margin, is recomputed on every scroll and layout and published when it changes.
  * 
  * Usage:
  * <com.derektrauger.controls.ObservableScrollView
@@ -23,6 +25,7 @@ import android.widget.HorizontalScrollView;
 public class ObservableScrollView extends HorizontalScrollView {
 
     private ScrollViewListener scrollViewListener = null;
+    private final VisibleRangeTracker visibleRangeTracker = new VisibleRangeTracker(true);
 
     public ObservableScrollView(Context context) {
         super(context);
@@ -40,13 +43,43 @@ public class ObservableScrollView extends HorizontalScrollView {
         this.scrollViewListener = scrollViewListener;
     }
 
+    public ScrollViewListener getScrollViewListener() {
+        return scrollViewListener;
+    }
+
+    public void setVisibleRangeListener(VisibleRangeListener visibleRangeListener) {
+        visibleRangeTracker.setListener(visibleRangeListener);
+        visibleRangeTracker.update(this);
+    }
+
+    // Distance in pixels beyond each edge of the viewport in which children still count as visible
+    public void setLookaheadMargin(int lookaheadMargin) {
+        visibleRangeTracker.setLookaheadMargin(lookaheadMargin);
+        visibleRangeTracker.update(this);
+    }
+
+    public int getFirstVisiblePosition() {
+        return visibleRangeTracker.getFirstPosition();
+    }
+
+    public int getLastVisiblePosition() {
+        return visibleRangeTracker.getLastPosition();
+    }
+
     @Override
     protected void onScrollChanged(int x, int y, int oldx, int oldy) {
         super.onScrollChanged(x, y, oldx, oldy);
+        visibleRangeTracker.update(this);
         if(scrollViewListener != null) {
             scrollViewListener.onScrollChanged(this, x, y, oldx, oldy);
         }
     }
 
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        visibleRangeTracker.update(this);
+    }
+
 }
 
@@ -0,0 +1,202 @@
+package com.derektrauger.library.controls;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+
+import com.derektrauger.library.imaging.ImageManager;
+
+/*
+ * Description:
+ * ScrollStateTracker derives the scroll velocity and idle state of an ObservableScrollView or a
+ * VerticalScrollView from their onScrollChanged events. While the velocity is above the fling threshold
+ * the ImageManager is paused so decoding and posting bitmaps for rows flying past does not compete with
+ * rendering. It is resumed once the velocity drops below the settle threshold or no scroll event arrived
+ * for the idle delay.
+ * A scroll view has a single listener slot, attach() takes it and forwards the events to the listener
+ * that was set before. Set the tracker with setScrollViewListener() only if nothing else listens.
+ * A tracker measures the velocity of one scroll view, create one per view. attach() throws if the
+ * tracker is already attached to another view, detach() it first.
+ *
+ * Usage:
+ * ScrollStateTracker tracker = new ScrollStateTracker(imageManager);
+ * tracker.attach(scrollView);
+ * ...
+ * tracker.detach();
+ */
+
+public class ScrollStateTracker implements ScrollViewListener, VerticalScrollViewListener {
+
+	private static final float DEFAULT_FLING_VELOCITY = 4000f; // px/s
+	private static final float DEFAULT_SETTLE_VELOCITY = 1000f; // px/s
+	private static final long DEFAULT_IDLE_DELAY = 120; // ms
+
+	private final ImageManager imageManager;
+	private final Handler handler = new Handler();
+	private final Runnable idleRunnable = new Runnable() {
+		public void run() {
+			onIdle();
+		}
+	};
+
+	private float flingVelocity = DEFAULT_FLING_VELOCITY;
+	private float settleVelocity = DEFAULT_SETTLE_VELOCITY;
+	private long idleDelay = DEFAULT_IDLE_DELAY;
+
+	private long lastEventTime;
+	private float velocity;
+	private boolean idle = true;
+	private boolean flinging;
+
+	// The attached scroll view and the listener it had before, which keeps receiving the events
+	private View scrollView;
+	private ScrollViewListener nextListener;
+	private VerticalScrollViewListener nextVerticalListener;
+
+	public ScrollStateTracker(ImageManager imageManager) {
+		this.imageManager = imageManager;
+	}
+
+	/*
+	 * Velocity in pixels per second above which image work is paused
+	 */
+	public void setFlingVelocity(float flingVelocity) {
+		this.flingVelocity = flingVelocity;
+	}
+
+	/*
+	 * Velocity in pixels per second below which image work is resumed, keep it below the fling velocity
+	 * to avoid toggling around a single threshold
+	 */
+	public void setSettleVelocity(float settleVelocity) {
+		this.settleVelocity = settleVelocity;
+	}
+
+	/*
+	 * Time in milliseconds without scroll events after which scrolling is considered settled
+	 */
+	public void setIdleDelay(long idleDelay) {
+		this.idleDelay = idleDelay;
+	}
+
+	/*
+	 * Sets the tracker as the listener of the scroll view, the previous listener is called after the tracker
+	 */
+	public void attach(ObservableScrollView scrollView) {
+		if (checkAttach(scrollView)) {
+			nextListener = scrollView.getScrollViewListener();
+			scrollView.setScrollViewListener(this);
+		}
+	}
+
+	/*
+	 * Sets the tracker as the listener of the scroll view, the previous listener is called after the tracker
+	 */
+	public void attach(VerticalScrollView scrollView) {
+		if (checkAttach(scrollView)) {
+			nextVerticalListener = scrollView.getScrollViewListener();
+			scrollView.setScrollViewListener(this);
+		}
+	}
+
+	/*
+	 * Gives the scroll view its previous listener back, if the tracker is still its listener, and resumes
+	 * image work paused by a fling
+	 */
+	public void detach() {
+		if (scrollView instanceof ObservableScrollView) {
+			final ObservableScrollView observableScrollView = (ObservableScrollView) scrollView;
+			if (observableScrollView.getScrollViewListener() == this) {
+				observableScrollView.setScrollViewListener(nextListener);
+			}
+		} else if (scrollView instanceof VerticalScrollView) {
+			final VerticalScrollView verticalScrollView = (VerticalScrollView) scrollView;
+			if (verticalScrollView.getScrollViewListener() == this) {
+				verticalScrollView.setScrollViewListener(nextVerticalListener);
+			}
+		}
+		scrollView = null;
+		nextListener = null;
+		nextVerticalListener = null;
+		handler.removeCallbacks(idleRunnable);
+		onIdle();
+	}
+
+	public float getVelocity() {
+		return velocity;
+	}
+
+	public boolean isIdle() {
+		return idle;
+	}
+
+	public boolean isFlinging() {
+		return flinging;
+	}
+
+	@Override
+	public void onScrollChanged(ObservableScrollView scrollView, int x, int y, int oldx, int oldy) {
+		onScroll(x - oldx, y - oldy);
+		if (nextListener != null) {
+			nextListener.onScrollChanged(scrollView, x, y, oldx, oldy);
+		}
+	}
+
+	@Override
+	public void onScrollChanged(VerticalScrollView scrollView, int x, int y, int oldx, int oldy) {
+		onScroll(x - oldx, y - oldy);
+		if (nextVerticalListener != null) {
+			nextVerticalListener.onScrollChanged(scrollView, x, y, oldx, oldy);
+		}
+	}
+
+	/*
+	 * Returns true if the tracker has to be set as the listener of the view, false if it already is
+	 */
+	private boolean checkAttach(View view) {
+		if (scrollView == view) {
+			return false;
+		}
+		if (scrollView != null) {
+			throw new IllegalStateException("Already attached to another scroll view, use one tracker per view");
+		}
+		scrollView = view;
+		return true;
+	}
+
+	private void onScroll(int dx, int dy) {
+		final long now = SystemClock.uptimeMillis();
+		final long elapsed = now - lastEventTime;
+		lastEventTime = now;
+
+		if (idle) {
+			// First event of a gesture, there is no previous event to measure against
+			idle = false;
+			velocity = 0;
+		} else if (elapsed > 0) {
+			final float instant = (float) Math.hypot(dx, dy) * 1000f / elapsed;
+			// Smooth out the jitter of individual frames
+			velocity = velocity * 0.5f + instant * 0.5f;
+		}
+
+		if (!flinging && velocity > flingVelocity) {
+			flinging = true;
+			imageManager.pause();
+		} else if (flinging && velocity < settleVelocity) {
+			flinging = false;
+			imageManager.resume();
+		}
+
+		handler.removeCallbacks(idleRunnable);
+		handler.postDelayed(idleRunnable, idleDelay);
+	}
+
+	private void onIdle() {
+		idle = true;
+		velocity = 0;
+		if (flinging) {
+			flinging = false;
+			imageManager.resume();
+		}
+	}
+}
@@ -12,6 +12,10 @@ import android.widget.ScrollView;
  * in the horizontal direction.  This control effectively only intercepts events if the user intentionally or 
  * deliberately scrolls in the vertical direction and in that event passes the ACTION_CANCEL flag to its children.
  * 
+ * Changes to the scroll position are reported to an optional VerticalScrollViewListener.
+ * When a VisibleRangeListener is set, the range of children of the content layout that are on screen,
+ * extended by the lookahead margin, is recomputed on every scroll and layout and published when it changes.
+ * 
  * Usage:
  * <com.derektrauger.controls.VerticalScrollView
                          android:id="@+id/VerticalScrollView01"
@@ -21,11 +25,55 @@ import android.widget.ScrollView;
 
 public class VerticalScrollView extends ScrollView {
 	private float xDistance, yDistance, lastX, lastY;
+	private VerticalScrollViewListener scrollViewListener = null;
+	private final VisibleRangeTracker visibleRangeTracker = new VisibleRangeTracker(false);
 
 	public VerticalScrollView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 	}
 
+	public void setScrollViewListener(VerticalScrollViewListener scrollViewListener) {
+		this.scrollViewListener = scrollViewListener;
+	}
+
+	public VerticalScrollViewListener getScrollViewListener() {
+		return scrollViewListener;
+	}
+
+	public void setVisibleRangeListener(VisibleRangeListener visibleRangeListener) {
+		visibleRangeTracker.setListener(visibleRangeListener);
+		visibleRangeTracker.update(this);
+	}
+
+	// Distance in pixels beyond each edge of the viewport in which children still count as visible
+	public void setLookaheadMargin(int lookaheadMargin) {
+		visibleRangeTracker.setLookaheadMargin(lookaheadMargin);
+		visibleRangeTracker.update(this);
+	}
+
+	public int getFirstVisiblePosition() {
+		return visibleRangeTracker.getFirstPosition();
+	}
+
+	public int getLastVisiblePosition() {
+		return visibleRangeTracker.getLastPosition();
+	}
+
+	@Override
+	protected void onScrollChanged(int x, int y, int oldx, int oldy) {
+		super.onScrollChanged(x, y, oldx, oldy);
+		visibleRangeTracker.update(this);
+		if(scrollViewListener != null) {
+			scrollViewListener.onScrollChanged(this, x, y, oldx, oldy);
+		}
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		super.onLayout(changed, l, t, r, b);
+		visibleRangeTracker.update(this);
+	}
+
 	@Override
 	public boolean onInterceptTouchEvent(MotionEvent ev) {
 		switch (ev.getAction()) {
@@ -0,0 +1,5 @@
+package com.derektrauger.library.controls;
+
+public interface VerticalScrollViewListener {
+	void onScrollChanged(VerticalScrollView scrollView, int x, int y, int oldx, int oldy);
+}
@@ -0,0 +1,9 @@
+package com.derektrauger.library.controls;
+
+public interface VisibleRangeListener {
+	/*
+	 * Called with the inclusive range of child positions intersecting the viewport extended by the
+	 * lookahead margin, or -1, -1 when no child is visible
+	 */
+	void onVisibleRangeChanged(int firstPosition, int lastPosition);
+}
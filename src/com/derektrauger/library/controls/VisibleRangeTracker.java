@@ -0,0 +1,109 @@
+package com.derektrauger.library.controls;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/*
+ * Description:
+ * Computes which children of a scroll view's content layout intersect the viewport extended by a
+ * lookahead margin. The children of the content layout are expected to be laid out in order along the
+ * scroll axis, as in a LinearLayout, so the range is found with two binary searches and without
+ * allocating. The listener is only notified when the range changes.
+ */
+
+final class VisibleRangeTracker {
+
+	private final boolean horizontal;
+	private VisibleRangeListener listener;
+	private int lookaheadMargin;
+	private int firstPosition = -1;
+	private int lastPosition = -1;
+
+	VisibleRangeTracker(boolean horizontal) {
+		this.horizontal = horizontal;
+	}
+
+	void setListener(VisibleRangeListener listener) {
+		this.listener = listener;
+		if (listener != null && firstPosition != -1) {
+			listener.onVisibleRangeChanged(firstPosition, lastPosition);
+		}
+	}
+
+	void setLookaheadMargin(int lookaheadMargin) {
+		this.lookaheadMargin = lookaheadMargin;
+	}
+
+	int getFirstPosition() {
+		return firstPosition;
+	}
+
+	int getLastPosition() {
+		return lastPosition;
+	}
+
+	void update(ViewGroup scrollView) {
+		int first = -1;
+		int last = -1;
+
+		if (scrollView.getChildCount() > 0 && scrollView.getChildAt(0) instanceof ViewGroup) {
+			final ViewGroup content = (ViewGroup) scrollView.getChildAt(0);
+			final int count = content.getChildCount();
+			final int offset = horizontal ? content.getLeft() : content.getTop();
+			final int windowStart = (horizontal ? scrollView.getScrollX() : scrollView.getScrollY()) - offset - lookaheadMargin;
+			final int windowEnd = windowStart + (horizontal ? scrollView.getWidth() : scrollView.getHeight()) + 2 * lookaheadMargin;
+
+			if (count > 0) {
+				first = firstEndingAfter(content, count, windowStart);
+				last = lastStartingBefore(content, count, windowEnd);
+				if (first > last) {
+					first = last = -1;
+				}
+			}
+		}
+
+		if (first != firstPosition || last != lastPosition) {
+			firstPosition = first;
+			lastPosition = last;
+			if (listener != null) {
+				listener.onVisibleRangeChanged(first, last);
+			}
+		}
+	}
+
+	private int firstEndingAfter(ViewGroup content, int count, int position) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (getEnd(content.getChildAt(middle)) <= position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int lastStartingBefore(ViewGroup content, int count, int position) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (getStart(content.getChildAt(middle)) < position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low - 1;
+	}
+
+	private int getStart(View child) {
+		return horizontal ? child.getLeft() : child.getTop();
+	}
+
+	private int getEnd(View child) {
+		return horizontal ? child.getRight() : child.getBottom();
+	}
+}
@@ -1,5 +1,6 @@
 package com.derektrauger.library.imaging;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -20,6 +21,7 @@ import android.util.Log;
 public class BitmapProcessor {
 
     private static final String LOG_TAG = "BitmapProcessor";
+    private static final int IO_BUFFER_SIZE = 8 * 1024;
 
     private Context context;
 
@@ -27,6 +29,13 @@ public class BitmapProcessor {
         this.context = context;
     }
 
+    /**
+    * Rasterizes a rounded copy of the drawable's bitmap.
+    *
+    * @deprecated allocates a second full size bitmap on every call, use RoundedDrawable which clips
+    * the original bitmap at draw time
+    */
+    @Deprecated
     public BitmapDrawable getRoundedCorners(BitmapDrawable drawable, int radius) {
         Bitmap bitmap = drawable.getBitmap();
         Bitmap output = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
@@ -74,6 +83,14 @@ public class BitmapProcessor {
         return inSampleSize;
     }
 
+    /**
+* inSampleSize decoding an image of the given bounds at the requested size gets, a requested
+* dimension of 0 keeps the original one
+*/
+    static int getSampleSize(BitmapFactory.Options bounds, int reqWidth, int reqHeight) {
+        return calculateInSampleSize(bounds, reqWidth == 0 ? bounds.outWidth : reqWidth, reqHeight == 0 ? bounds.outHeight : reqHeight);
+    }
+
     /**
 * Decodes a sampled Bitmap from the provided url in the requested width and
 * height
@@ -87,7 +104,15 @@ public class BitmapProcessor {
 * @return Decoded bitmap
 */
     public static Bitmap decodeSampledBitmapFromUrl(String urlString, int reqWidth, int reqHeight) {
-        InputStream inputStream = null;
+        return decodeSampledBitmapFromUrl(urlString, reqWidth, reqHeight, null);
+    }
+
+    /**
+* Same as decodeSampledBitmapFromUrl(String, int, int), additionally reporting the bytes
+* downloaded, the download time and the decode time to the given metrics if not null. The body is
+* downloaded once into memory, both decoding passes read it from there
+*/
+    public static Bitmap decodeSampledBitmapFromUrl(String urlString, int reqWidth, int reqHeight, ImageMetrics metrics) {
         URL url = null;
 
         try {
@@ -97,11 +122,26 @@ public class BitmapProcessor {
             return null;
         }
 
+        final long start = System.nanoTime();
+        final byte[] data;
+        InputStream inputStream = null;
         try {
             inputStream = (InputStream) url.getContent();
+            data = readFully(inputStream);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Failed to download bitmap", e);
             return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.add(ImageMetrics.BYTES_DOWNLOADED, data.length);
+            metrics.recordTime(ImageMetrics.NETWORK_TIME, System.nanoTime() - start);
         }
 
         // First decode with inJustDecodeBounds=true to check dimensions
@@ -109,28 +149,32 @@ public class BitmapProcessor {
         options.inJustDecodeBounds = true;
         options.inPurgeable = true;
         options.inInputShareable = true;
-        BitmapFactory.decodeStream(inputStream, null, options);
-
-        if (reqWidth == 0) {
-            reqWidth = options.outWidth;
-        }
-        if (reqHeight == 0) {
-            reqHeight = options.outHeight;
-        }
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
 
         // Calculate inSampleSize
-        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inSampleSize = getSampleSize(options, reqWidth, reqHeight);
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
 
-        try {
-            inputStream = (InputStream) url.getContent();
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Failed to download bitmap", e);
-            return null;
+        final long decodeStart = System.nanoTime();
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (metrics != null && bitmap != null) {
+            metrics.recordTime(ImageMetrics.DECODE_TIME, System.nanoTime() - decodeStart);
         }
+        return bitmap;
+    }
 
-        return BitmapFactory.decodeStream(inputStream, null, options);
+    /**
+* Reads the stream to its end, the stream is not closed
+*/
+    static byte[] readFully(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+        final byte[] buffer = new byte[IO_BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
     }
 }
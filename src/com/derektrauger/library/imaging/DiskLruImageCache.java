@@ -42,8 +42,11 @@ public class DiskLruImageCache {
     }
 
     public DiskLruImageCache(Context context, String uniqueName, int diskCacheSize, CompressFormat compressFormat, int quality) {
+        this(getDiskCacheDir(context, uniqueName), diskCacheSize, compressFormat, quality);
+    }
+
+    public DiskLruImageCache(File diskCacheDir, int diskCacheSize, CompressFormat compressFormat, int quality) {
         try {
-            final File diskCacheDir = getDiskCacheDir(context, uniqueName);
             diskCache = DiskLruCache.open(diskCacheDir, APP_VERSION, VALUE_COUNT, diskCacheSize);
             mCompressFormat = compressFormat;
             mCompressQuality = quality;
@@ -64,7 +67,7 @@ public class DiskLruImageCache {
         }
     }
 
-    private File getDiskCacheDir(Context context, String uniqueName) {
+    private static File getDiskCacheDir(Context context, String uniqueName) {
         // Check if media is mounted or storage is built-in, if so, try and use
         // external cache dir
         // otherwise use internal cache dir
@@ -104,6 +107,72 @@ public class DiskLruImageCache {
 
     }
 
+    /**
+    * Stores the raw bytes read from the given stream under the key without decoding them.
+    * The stream is not closed.
+    *
+    * @return true if the entry was committed
+    */
+    public boolean put(String key, InputStream data) {
+        DiskLruCache.Editor editor = null;
+        OutputStream out = null;
+        try {
+            editor = diskCache.edit(key);
+            if (editor == null) {
+                return false;
+            }
+
+            out = new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE);
+            final byte[] buffer = new byte[IO_BUFFER_SIZE];
+            int read;
+            while ((read = data.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+
+            editor.commit();
+            if (LOG_CACHE_OPERATIONS) {
+                Log.v(TAG, "stream put on disk cache " + key);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "ERROR on: stream put on disk cache " + key, e);
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (editor != null) {
+                    editor.abort();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        return false;
+    }
+
+    /**
+    * Opens the committed entry stored under the key, or returns null if the key is not cached.
+    * The stream reads the entry as it was when opened even if it is replaced or evicted later,
+    * the caller has to close it. Useful for decoders that keep the source open, such as
+    * BitmapRegionDecoder.
+    */
+    public InputStream getInputStream(String key) {
+        try {
+            final DiskLruCache.Snapshot snapshot = diskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            // Closing the stream releases the snapshot, it holds nothing else
+            return snapshot.getInputStream(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
     public Bitmap getBitmap(String key) {
         Bitmap bitmap = null;
         DiskLruCache.Snapshot snapshot = null;
@@ -129,6 +198,36 @@ public class DiskLruImageCache {
         return bitmap;
     }
 
+    /**
+    * Returns the raw bytes stored under the key, or null if the key is not cached.
+    */
+    public byte[] getBytes(String key) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = diskCache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+
+            final InputStream in = snapshot.getInputStream(0);
+            final byte[] data = new byte[(int) snapshot.getLength(0)];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            return data;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+
+        return null;
+    }
+
     public boolean containsKey(String key) {
         boolean contained = false;
         DiskLruCache.Snapshot snapshot = null;
@@ -0,0 +1,56 @@
+package com.derektrauger.library.imaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Unit of work queued on the ImageManager thread pool. Jobs are ordered by priority, higher first,
+* and in submission order within the same priority. A cancelled job does nothing when it is run.
+*/
+abstract class ImageJob implements Runnable, Comparable<ImageJob> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long sequence = SEQUENCE.getAndIncrement();
+    private final long queuedAt = System.nanoTime();
+    private volatile int priority;
+    private volatile boolean cancelled;
+
+    ImageJob(int priority) {
+        this.priority = priority;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    /**
+    * Only safe while the job is not in a priority queue, remove and re-add it around the change.
+    */
+    void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    public final void run() {
+        if (!cancelled) {
+            ImageManager.getMetrics().recordTime(ImageMetrics.QUEUE_WAIT_TIME, System.nanoTime() - queuedAt);
+            execute();
+        }
+    }
+
+    abstract void execute();
+
+    public int compareTo(ImageJob other) {
+        if (priority != other.priority) {
+            return priority > other.priority ? -1 : 1;
+        }
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+}
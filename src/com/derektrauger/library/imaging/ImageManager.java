@@ -5,13 +5,17 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Process;
 import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.ImageView;
 
 import com.derektrauger.library.Utils;
+import com.derektrauger.library.controls.VisibleRangeListener;
+import com.derektrauger.library.imaging.transformations.Transformation;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -21,25 +25,44 @@ import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 
-public class ImageManager {
+public class ImageManager implements VisibleRangeListener {
     /* Static members */
     private static final String LOG_TAG = "ImageManager";
-    private static final boolean LOG_CACHE_OPERATIONS = true;
     private static final int placeholder = Color.parseColor("#eeeeee");
     private static final Map<ImageView, String> imageViews = Collections.synchronizedMap(new WeakHashMap<ImageView, String>());
     private static LruCache<String, Bitmap> memoryCache;
     private static DiskLruImageCache diskCache;
+    private static final ImageMetrics metrics = new ImageMetrics();
+    // Transformed keys last built per getCacheKey(), so the UI thread can find a transformed bitmap
+    // in memory without knowing the size of its source
+    private static final LruCache<String, String> transformedKeys = new LruCache<String, String>(256);
+
+    /* Job priorities, higher runs first */
+    static final int PRIORITY_PREFETCH = 0;
+    static final int PRIORITY_OFFSCREEN = 2;
+    static final int PRIORITY_NORMAL = 5;
+    static final int PRIORITY_VISIBLE = 10;
+    private static final int DOWNLOAD_THREADS = 6;
 
     /* Instance members */
-    private final ExecutorService downloadThreadPool;
+    private final PausableThreadPoolExecutor downloadThreadPool;
     private final Context context;
+    // Deliveries held back while paused, only touched on the UI thread
+    private final List<Message> pausedDeliveries = new ArrayList<Message>();
+    private boolean paused;
+    // Queued jobs per view and the published visible range, only touched on the UI thread. Weak keys
+    // like imageViews, a view dropped with its load still queued is not kept alive by the map
+    private final Map<ImageView, ViewJob> pendingViewJobs = new WeakHashMap<ImageView, ViewJob>();
+    private int firstVisiblePosition = -1;
+    private int lastVisiblePosition = Integer.MAX_VALUE;
 
     private ImageManagerCallback callback;
 
@@ -51,10 +74,20 @@ public class ImageManager {
 
     public static class ImageManagerOptions {
         public boolean roundedCorners = false;
+        public boolean circleCrop = false;
         public boolean fadeIn = true;
         public int cornerRadius = 5;
+        // Optional per-corner radii {topLeft, topRight, bottomRight, bottomLeft}, overrides cornerRadius.
+        // Ignored unless it has all four
+        public float[] cornerRadii;
         public int requestedWidth;
         public int requestedHeight;
+        // Applied in order on the background thread, the result is cached under its own key
+        public final List<Transformation> transformations = new ArrayList<Transformation>();
+        public boolean cacheTransformedOnDisk = false;
+        // Position of the view in its scroll container, -1 if unknown. Used to prioritize the
+        // views inside the range published through onVisibleRangeChanged
+        public int position = -1;
 
         public ImageManagerOptions() {
             this(0, 0);
@@ -68,6 +101,35 @@ public class ImageManager {
             this.requestedWidth = requestedWidth;
             this.requestedHeight = requestedHeight;
         }
+
+        public ImageManagerOptions addTransformation(Transformation transformation) {
+            transformations.add(transformation);
+            return this;
+        }
+    }
+
+    public static class PrefetchOptions {
+        // Budgets for the whole batch, 0 means unlimited
+        public int maxCount;
+        // Bytes of decoded bitmaps, the memory the batch takes in the memory cache. With diskOnly
+        // it is estimated from the image headers, as if the images were decoded
+        public long maxBytes;
+        // Decode only down to this size, 0 keeps the original dimension. Downsampled bitmaps are
+        // cached in memory under a key with the size and the original bytes are kept on disk, so a
+        // full size load of the same URL is never served the small copy
+        public int requestedWidth;
+        public int requestedHeight;
+        // Only store the downloaded bytes on disk instead of decoding into the memory cache
+        public boolean diskOnly = false;
+
+        public PrefetchOptions() {
+            this(0, 0);
+        }
+
+        public PrefetchOptions(int requestedWidth, int requestedHeight) {
+            this.requestedWidth = requestedWidth;
+            this.requestedHeight = requestedHeight;
+        }
     }
 
     public ImageManager(DiskLruImageCache diskImageCache, Context context) {
@@ -77,7 +139,9 @@ public class ImageManager {
             diskCache = diskImageCache;
         }
 
-        downloadThreadPool = Executors.newFixedThreadPool(6);
+        // Jobs are ImageJobs ordered by priority, they have to be queued with execute() rather
+        // than submit() which would wrap them in non comparable futures
+        downloadThreadPool = new PausableThreadPoolExecutor(DOWNLOAD_THREADS);
 
         // Get max available VM memory, exceeding this amount will throw an
         // OutOfMemory exception. Stored in kilobytes as LruCache takes an
@@ -112,17 +176,39 @@ public class ImageManager {
     }
 
     public void addBitmapToCache(String key, Bitmap bitmap) {
-        if (getBitmapFromLRUCache(key) == null) {
+        if (memoryCache.get(key) == null) {
             memoryCache.put(key, bitmap);
         }
 
+        if (diskCache == null) {
+            return;
+        }
+
         String diskCacheKey = getDiskCacheKey(key);
 
-        if (diskCache != null && !diskCache.containsKey(diskCacheKey)) {
-            diskCache.put(diskCacheKey, bitmap);
+        if (!diskCache.containsKey(diskCacheKey)) {
+            putBitmapToDiskCache(diskCacheKey, bitmap);
         }
     }
 
+    private static void putBitmapToDiskCache(String diskCacheKey, Bitmap bitmap) {
+        final long start = System.nanoTime();
+        diskCache.put(diskCacheKey, bitmap);
+        metrics.recordTime(ImageMetrics.DISK_WRITE_TIME, System.nanoTime() - start);
+    }
+
+    public static ImageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+    * Returns the current metrics of all ImageManagers along with the bytes held by the memory cache.
+    */
+    public static ImageMetrics.Snapshot getMetricsSnapshot() {
+        final LruCache<String, Bitmap> cache = memoryCache;
+        return metrics.snapshot(cache != null ? cache.size() * 1024L : 0);
+    }
+
     public void clearCache(String urlString) {
         memoryCache.remove(urlString);
         if (diskCache == null) return;
@@ -133,52 +219,202 @@ public class ImageManager {
         }*/
     }
 
-    private Bitmap getBitmapFromLRUCache(String urlString) {
-        Bitmap cachedBitmap = memoryCache.get(urlString);
+    /**
+    * Returns the key the displayed bitmap is cached under: the URL itself when there are no
+    * transformations, otherwise the URL, the requested size and the transformation chain, which
+    * getTransformedKey() completes with the size of the source.
+    */
+    static String getCacheKey(String urlString, ImageManagerOptions options) {
+        if (options.transformations.isEmpty()) {
+            return urlString;
+        }
 
-        if (cachedBitmap == null) {
+        final StringBuilder key = new StringBuilder(urlString);
+        key.append('#').append(options.requestedWidth).append('x').append(options.requestedHeight);
+        for (Transformation transformation : options.transformations) {
+            key.append('|').append(transformation.getKey());
+        }
+        return key.toString();
+    }
+
+    /**
+    * Returns the key a transformed bitmap is cached under, getCacheKey() plus the size of the source
+    * it was made from. The source may have been decoded at another sample size for another view and
+    * the same transformations of a smaller source give a different bitmap.
+    */
+    static String getTransformedKey(String urlString, ImageManagerOptions options, int sourceWidth, int sourceHeight) {
+        return getCacheKey(urlString, options) + '@' + sourceWidth + 'x' + sourceHeight;
+    }
+
+    /**
+    * Memory only lookup of the transformed bitmap, safe on the UI thread.
+    */
+    private Bitmap getTransformedBitmapFromMemory(String urlString, ImageManagerOptions options) {
+        final String cacheKey = transformedKeys.get(getCacheKey(urlString, options));
+        if (cacheKey == null) {
+            metrics.increment(ImageMetrics.MEMORY_MISS);
+            return null;
+        }
+        return getBitmapFromLRUCache(cacheKey);
+    }
+
+    /**
+    * Returns the transformed bitmap from the memory or disk cache, or else transforms the source,
+    * which may be cached from another view. Reads the disk, call it from a worker thread.
+    */
+    private Bitmap loadTransformedBitmap(String urlString, ImageManagerOptions options) {
+        final boolean sampled = options.requestedWidth > 0 || options.requestedHeight > 0;
+        Bitmap source = memoryCache.get(urlString);
+        if (source == null && sampled) {
+            source = memoryCache.get(getSampledKey(urlString, options.requestedWidth, options.requestedHeight));
+        }
+        String checkedKey = null;
+        if (source != null) {
+            checkedKey = getTransformedKey(urlString, options, source.getWidth(), source.getHeight());
+        } else {
+            // The header of the cached source is enough to find a transformed copy on disk
+            final BitmapFactory.Options bounds = getDiskCacheBounds(urlString);
+            if (bounds != null) {
+                checkedKey = getTransformedKey(urlString, options, bounds.outWidth, bounds.outHeight);
+            }
+        }
+        if (checkedKey != null) {
+            final Bitmap cached = getTransformedBitmapFromCache(checkedKey, options);
+            if (cached != null) {
+                transformedKeys.put(getCacheKey(urlString, options), checkedKey);
+                return cached;
+            }
+        }
+
+        if (source == null && !sampled) {
+            source = getBitmapFromDiskCache(urlString);
+        }
+        if (source == null) {
+            source = loadSampledBitmap(urlString, options);
+        }
+        if (source == null) {
             return null;
         }
 
-        if (LOG_CACHE_OPERATIONS) {
-            Log.v(LOG_TAG, "Item loaded from LRU cache: " + urlString);
+        final String cacheKey = getTransformedKey(urlString, options, source.getWidth(), source.getHeight());
+        Bitmap bitmap = null;
+        if (!cacheKey.equals(checkedKey)) {
+            bitmap = getTransformedBitmapFromCache(cacheKey, options);
+        }
+        if (bitmap == null) {
+            bitmap = transformAndCache(cacheKey, source, options);
+        }
+        if (bitmap != null) {
+            transformedKeys.put(getCacheKey(urlString, options), cacheKey);
         }
+        return bitmap;
+    }
+
+    private static BitmapFactory.Options getDiskCacheBounds(String urlString) {
+        if (diskCache == null) {
+            return null;
+        }
+        final InputStream in = diskCache.getInputStream(getDiskCacheKey(urlString));
+        if (in == null) {
+            return null;
+        }
+        try {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(new BufferedInputStream(in), null, options);
+            return options.outWidth > 0 && options.outHeight > 0 ? options : null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+    * Worker side lookup of a transformed bitmap. The memory lookup is not counted in the metrics,
+    * loadImage() already counted it on the UI thread.
+    */
+    private Bitmap getTransformedBitmapFromCache(String cacheKey, ImageManagerOptions options) {
+        Bitmap bitmap = memoryCache.get(cacheKey);
+
+        if (bitmap == null && options.cacheTransformedOnDisk && diskCache != null) {
+            bitmap = getBitmapFromDiskCache(cacheKey);
+            if (bitmap != null) {
+                memoryCache.put(cacheKey, bitmap);
+            }
+        }
+
+        return bitmap;
+    }
+
+    private Bitmap transformAndCache(String cacheKey, Bitmap source, ImageManagerOptions options) {
+        Bitmap bitmap = source;
+
+        for (Transformation transformation : options.transformations) {
+            final Bitmap transformed = transformation.transform(bitmap);
+            // Intermediate results are not referenced by anything else
+            if (bitmap != source && bitmap != transformed) {
+                bitmap.recycle();
+            }
+            bitmap = transformed;
+            if (bitmap == null) {
+                return null;
+            }
+        }
+
+        memoryCache.put(cacheKey, bitmap);
+
+        if (options.cacheTransformedOnDisk && diskCache != null) {
+            String diskCacheKey = getDiskCacheKey(cacheKey);
+            if (!diskCache.containsKey(diskCacheKey)) {
+                putBitmapToDiskCache(diskCacheKey, bitmap);
+            }
+        }
+
+        return bitmap;
+    }
+
+    private Bitmap getBitmapFromLRUCache(String urlString) {
+        Bitmap cachedBitmap = memoryCache.get(urlString);
+
+        metrics.increment(cachedBitmap != null ? ImageMetrics.MEMORY_HIT : ImageMetrics.MEMORY_MISS);
 
         return cachedBitmap;
     }
 
     public Bitmap getBitmapFromDiskCache(String urlString) {
+        if (diskCache == null) {
+            metrics.increment(ImageMetrics.DISK_MISS);
+            return null;
+        }
+
         String key = getDiskCacheKey(urlString);
+        final long start = System.nanoTime();
         Bitmap cachedBitmap = diskCache.getBitmap(key);
 
         if (cachedBitmap == null) {
+            metrics.increment(ImageMetrics.DISK_MISS);
             return null;
         }
 
-        if (LOG_CACHE_OPERATIONS) {
-            Log.v(LOG_TAG, "image read from Disk cache: " + key);
-        }
+        metrics.recordTime(ImageMetrics.DECODE_TIME, System.nanoTime() - start);
+        metrics.increment(ImageMetrics.DISK_HIT);
 
         return cachedBitmap;
     }
 
-    private static String getDiskCacheKey(String urlString) {
+    static String getDiskCacheKey(String urlString) {
     	String sanitizedKey = Utils.getMD5(urlString);
         sanitizedKey = sanitizedKey.replaceAll("[^a-z0-9_]", "");
-        if (LOG_CACHE_OPERATIONS) {
-            Log.d(LOG_TAG, "cache key: " + sanitizedKey.substring(0, Math.min(63, sanitizedKey.length())));
-        }
         return sanitizedKey.substring(0, Math.min(63, sanitizedKey.length()));
     }
 
     private void queueJob(final String urlString) {
-        downloadThreadPool.submit(new Runnable() {
-            public void run() {
+        downloadThreadPool.execute(new ImageJob(PRIORITY_NORMAL) {
+            void execute() {
                 downloadBitmap(urlString);
 
-                if (LOG_CACHE_OPERATIONS) {
-                    Log.d(LOG_TAG, "Image downloaded: " + urlString);
-                }
                 if (callback != null) {
                     callback.onImageDownloaded(urlString);
                 }
@@ -187,20 +423,59 @@ public class ImageManager {
     }
 
     private void queueJob(final String urlString, final ImageView imageView, final ImageManagerOptions options) {
-        final Handler handler = new ImageManagerHandler(this, imageView, urlString, options);
+        final ImageManagerHandler handler = new ImageManagerHandler(this, imageView, urlString, options);
+        final ViewJob job = new ViewJob(urlString, options.position, getViewPriority(options.position)) {
+            void execute() {
+                Bitmap bitmap = null;
+                try {
+                    if (options.transformations.isEmpty()) {
+                        bitmap = loadSampledBitmap(urlString, options);
+                    } else {
+                        bitmap = loadTransformedBitmap(urlString, options);
+                    }
+                } finally {
+                    // Delivered even if the load threw, the handler releases the view's pending entry
+                    Message message = handler.obtainMessage(1, bitmap);
+
+                    handler.sendMessage(message);
+                }
+            }
+        };
 
-        downloadThreadPool.submit(new Runnable() {
-            public void run() {
-                final BitmapDrawable drawable = downloadDrawable(urlString, options);
-                Message message = handler.obtainMessage(1, drawable);
+        handler.job = job;
+        pendingViewJobs.put(imageView, job);
+        try {
+            downloadThreadPool.execute(job);
+        } catch (RejectedExecutionException e) {
+            pendingViewJobs.remove(imageView);
+            throw e;
+        }
+    }
 
-                if (LOG_CACHE_OPERATIONS) {
-                    Log.d(LOG_TAG, "Image downloaded: " + urlString);
-                }
+    private int getViewPriority(int position) {
+        if (position < 0 || (position >= firstVisiblePosition && position <= lastVisiblePosition)) {
+            return PRIORITY_VISIBLE;
+        }
+        return PRIORITY_OFFSCREEN;
+    }
 
-                handler.sendMessage(message);
+    /**
+    * Receives the range of positions visible in the scroll container, e.g. from
+    * ObservableScrollView.setVisibleRangeListener. Queued loads of views inside the range are
+    * moved ahead, the ones that left it are moved behind. Must be called on the UI thread.
+    */
+    public void onVisibleRangeChanged(int firstPosition, int lastPosition) {
+        firstVisiblePosition = firstPosition;
+        lastVisiblePosition = lastPosition;
+
+        for (ViewJob job : pendingViewJobs.values()) {
+            final int priority = getViewPriority(job.position);
+            // Jobs can only be reordered while still queued, remove() fails once a worker took them
+            if (priority != job.getPriority() && downloadThreadPool.remove(job)) {
+                job.setPriority(priority);
+                downloadThreadPool.execute(job);
             }
-        });
+        }
     }
 
     public void loadImage(final String urlString) {
@@ -213,31 +488,238 @@ public class ImageManager {
         queueJob(urlString);
     }
 
+    /**
+    * Warms the caches for the given URLs, in list order, at the lowest priority so visible loads
+    * always run first. URLs already cached cost nothing against the budget.
+    *
+    * @return a handle to cancel the whole batch
+    */
+    public PrefetchGroup prefetch(List<String> urlStrings, final PrefetchOptions options) {
+        final PrefetchGroup group = new PrefetchGroup(downloadThreadPool, options.maxCount, options.maxBytes);
+
+        for (final String urlString : urlStrings) {
+            final ImageJob job = new ImageJob(PRIORITY_PREFETCH) {
+                void execute() {
+                    try {
+                        if (!group.hasBudget()) {
+                            return;
+                        }
+
+                        final int threadPriority = Process.getThreadPriority(Process.myTid());
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                        try {
+                            prefetchImage(urlString, options, group);
+                        } finally {
+                            Process.setThreadPriority(threadPriority);
+                        }
+                    } finally {
+                        group.remove(this);
+                    }
+                }
+            };
+            group.add(job);
+            downloadThreadPool.execute(job);
+        }
+
+        return group;
+    }
+
+    private void prefetchImage(String urlString, PrefetchOptions options, PrefetchGroup group) {
+        final boolean sampled = options.requestedWidth > 0 || options.requestedHeight > 0;
+        final String sampledKey = getSampledKey(urlString, options.requestedWidth, options.requestedHeight);
+        if (memoryCache.get(urlString) != null || (sampled && memoryCache.get(sampledKey) != null)) {
+            return;
+        }
+
+        final String key = getDiskCacheKey(urlString);
+        final boolean onDisk = diskCache != null && diskCache.containsKey(key);
+
+        if (options.diskOnly) {
+            if (diskCache == null || onDisk || !downloadToDiskCache(diskCache, urlString, key)) {
+                return;
+            }
+            final BitmapFactory.Options bounds = getDiskCacheBounds(urlString);
+            group.onFetched(bounds != null ? getDecodedSize(bounds, options.requestedWidth, options.requestedHeight) : 0);
+            return;
+        }
+
+        final Bitmap bitmap;
+        if (sampled) {
+            // The original bytes stay on disk, see loadSampledBitmap()
+            bitmap = loadSampledBitmap(urlString, options.requestedWidth, options.requestedHeight);
+        } else if (onDisk) {
+            bitmap = diskCache.getBitmap(key);
+            if (bitmap != null) {
+                memoryCache.put(urlString, bitmap);
+            }
+        } else {
+            bitmap = loadSampledBitmap(urlString, 0, 0);
+        }
+
+        if (bitmap != null) {
+            group.onFetched(Utils.getSizeInBytes(bitmap));
+        }
+    }
+
+    /**
+    * Memory cache key of a bitmap downsampled to the requested size, the URL itself for full size
+    * bitmaps.
+    */
+    static String getSampledKey(String urlString, int requestedWidth, int requestedHeight) {
+        if (requestedWidth <= 0 && requestedHeight <= 0) {
+            return urlString;
+        }
+        return urlString + '#' + requestedWidth + 'x' + requestedHeight;
+    }
+
+    private static long getDecodedSize(BitmapFactory.Options bounds, int requestedWidth, int requestedHeight) {
+        final int sampleSize = BitmapProcessor.getSampleSize(bounds, requestedWidth, requestedHeight);
+        // ARGB_8888, the decoder rounds the sampled dimensions up
+        return 4L * ((bounds.outWidth + sampleSize - 1) / sampleSize) * ((bounds.outHeight + sampleSize - 1) / sampleSize);
+    }
+
+    private static Bitmap decodeSampledBitmapFromDiskCache(String urlString, int requestedWidth, int requestedHeight) {
+        final BitmapFactory.Options options = getDiskCacheBounds(urlString);
+        if (options == null) {
+            metrics.increment(ImageMetrics.DISK_MISS);
+            return null;
+        }
+        options.inSampleSize = BitmapProcessor.getSampleSize(options, requestedWidth, requestedHeight);
+        options.inJustDecodeBounds = false;
+
+        final InputStream in = diskCache.getInputStream(getDiskCacheKey(urlString));
+        if (in == null) {
+            metrics.increment(ImageMetrics.DISK_MISS);
+            return null;
+        }
+        final long start = System.nanoTime();
+        final Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(new BufferedInputStream(in), null, options);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (bitmap == null) {
+            metrics.increment(ImageMetrics.DISK_MISS);
+            return null;
+        }
+        metrics.recordTime(ImageMetrics.DECODE_TIME, System.nanoTime() - start);
+        metrics.increment(ImageMetrics.DISK_HIT);
+        return bitmap;
+    }
+
+    /**
+    * Streams the response body into the disk cache without decoding it.
+    *
+    * @return true if the entry was stored
+    */
+    static boolean downloadToDiskCache(DiskLruImageCache cache, String urlString, String key) {
+        final long start = System.nanoTime();
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(urlString).openConnection();
+            urlConnection.setRequestProperty("Accept-Encoding", "");
+            urlConnection.setDoOutput(false);
+            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+            final MeteredInputStream meteredStream = new MeteredInputStream(inputStream);
+            final boolean stored = cache.put(key, meteredStream);
+            metrics.add(ImageMetrics.BYTES_DOWNLOADED, meteredStream.getCount());
+            metrics.increment(stored ? ImageMetrics.NETWORK_SUCCESS : ImageMetrics.NETWORK_FAILURE);
+            if (stored) {
+                metrics.recordTime(ImageMetrics.NETWORK_TIME, System.nanoTime() - start);
+            }
+            return stored;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to download image: " + urlString, e);
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+        return false;
+    }
+
     public void loadImage(final String urlString, final ImageView imageView, final ImageManagerOptions options) {
         imageViews.put(imageView, urlString);
 
-        Bitmap bitmap = getBitmapFromCache(urlString);
+        final ViewJob pendingJob = pendingViewJobs.get(imageView);
+        if (pendingJob != null && !pendingJob.urlString.equals(urlString)) {
+            // The view was recycled for another image, its previous load is not needed anymore
+            pendingJob.cancel();
+            downloadThreadPool.remove(pendingJob);
+            pendingViewJobs.remove(imageView);
+        }
+
+        Bitmap bitmap = null;
+        if (options.transformations.isEmpty()) {
+            if (options.requestedWidth > 0 || options.requestedHeight > 0) {
+                // Loaded at this size before, or else at full size. The disk holds the original,
+                // the job decodes it downsampled instead of decoding it whole on the UI thread
+                bitmap = memoryCache.get(getSampledKey(urlString, options.requestedWidth, options.requestedHeight));
+                if (bitmap != null) {
+                    metrics.increment(ImageMetrics.MEMORY_HIT);
+                } else {
+                    bitmap = getBitmapFromLRUCache(urlString);
+                }
+            } else {
+                bitmap = getBitmapFromCache(urlString);
+            }
+        } else {
+            // The disk copy is looked up by the job, not on the UI thread
+            bitmap = getTransformedBitmapFromMemory(urlString, options);
+        }
 
         if (bitmap != null) {
-            BitmapDrawable drawable = new BitmapDrawable(context.getResources(), bitmap);
             // we do not want to fade in if the image is already cached
             // to make things smoother
             options.fadeIn = false;
-            setImageDrawable(imageView, drawable, options);
+            setImageBitmap(imageView, bitmap, options);
             return;
         }
 
         imageView.setImageResource(placeholder);
+        if (pendingJob != null && pendingJob.urlString.equals(urlString)) {
+            // Already queued for this view
+            return;
+        }
         queueJob(urlString, imageView, options);
     }
 
-    private void setImageDrawable(final ImageView imageView, BitmapDrawable bitmapDrawable, final ImageManagerOptions options) {
-        if (options.roundedCorners) {
-            BitmapProcessor processor = new BitmapProcessor(context);
-            bitmapDrawable = processor.getRoundedCorners(bitmapDrawable, options.cornerRadius);
+    private void setImageBitmap(final ImageView imageView, Bitmap bitmap, final ImageManagerOptions options) {
+        final Drawable current = imageView.getDrawable();
+        if (reuseDrawable(current, bitmap, options)) {
+            // Already showing this bitmap, e.g. a list row bound again to the same item
+            if (callback != null) {
+                callback.onImageLoaded(imageView);
+            }
+            return;
+        }
+
+        final Drawable drawable;
+        // Rounding is applied by the drawable at draw time, the cached bitmap is never copied
+        if (options.circleCrop) {
+            drawable = RoundedDrawable.circle(bitmap);
+        } else if (options.roundedCorners && hasCornerRadii(options)) {
+            final float[] radii = options.cornerRadii;
+            drawable = new RoundedDrawable(bitmap, radii[0], radii[1], radii[2], radii[3]);
+        } else if (options.roundedCorners) {
+            drawable = new RoundedDrawable(bitmap, options.cornerRadius);
+        } else {
+            drawable = new BitmapDrawable(context.getResources(), bitmap);
         }
 
-        imageView.setImageDrawable(bitmapDrawable);
+        imageView.setImageDrawable(drawable);
 
         if (options.fadeIn) {
             Utils.fadeIn(imageView);
@@ -248,8 +730,41 @@ public class ImageManager {
         }
     }
 
+    /**
+    * Returns true if the view's drawable already draws the bitmap, after updating its shape to the
+    * options. Saves the Paint, shader and Path a new RoundedDrawable allocates on every display.
+    */
+    private static boolean reuseDrawable(Drawable current, Bitmap bitmap, ImageManagerOptions options) {
+        if (current instanceof RoundedDrawable) {
+            final RoundedDrawable rounded = (RoundedDrawable) current;
+            if (rounded.getBitmap() != bitmap) {
+                return false;
+            }
+            if (options.circleCrop) {
+                if (!rounded.isCircle()) {
+                    rounded.setCircle();
+                }
+            } else if (options.roundedCorners && hasCornerRadii(options)) {
+                final float[] radii = options.cornerRadii;
+                rounded.setCornerRadii(radii[0], radii[1], radii[2], radii[3]);
+            } else if (options.roundedCorners) {
+                rounded.setCornerRadii(options.cornerRadius, options.cornerRadius, options.cornerRadius, options.cornerRadius);
+            } else {
+                return false;
+            }
+            return true;
+        }
+        return current instanceof BitmapDrawable && !options.circleCrop && !options.roundedCorners
+                && ((BitmapDrawable) current).getBitmap() == bitmap;
+    }
+
+    private static boolean hasCornerRadii(ImageManagerOptions options) {
+        return options.cornerRadii != null && options.cornerRadii.length >= 4;
+    }
+
     private void downloadBitmap(final String urlString) {
-        InputStream inputStream = null;
+        final long start = System.nanoTime();
+        MeteredInputStream inputStream = null;
         URL url = null;
 
         try {
@@ -259,6 +774,7 @@ public class ImageManager {
         }
 
         if (url == null) {
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
             callback.onNullBitmap();
             return;
         }
@@ -269,64 +785,184 @@ public class ImageManager {
 //            urlConnection.setChunkedStreamingMode(0);
             urlConnection.setRequestProperty( "Accept-Encoding", "" );
             urlConnection.setDoOutput(false);
-            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+            inputStream = new MeteredInputStream(new BufferedInputStream(urlConnection.getInputStream()));
         } catch (IOException e) {
 //            Log.e(LOG_TAG, "Failed to download bitmap: " + urlString, e);
         }
 
         if (inputStream== null) {
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
             callback.onNullBitmap();
             return;
         }
 
-        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+        // Read the body before decoding so the network and the decode are timed separately
+        byte[] data = null;
+        try {
+            data = BitmapProcessor.readFully(inputStream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to download bitmap: " + urlString, e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+        metrics.add(ImageMetrics.BYTES_DOWNLOADED, inputStream.getCount());
+
+        Bitmap bitmap = null;
+        if (data != null) {
+            metrics.recordTime(ImageMetrics.NETWORK_TIME, System.nanoTime() - start);
+            final long decodeStart = System.nanoTime();
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (bitmap != null) {
+                metrics.recordTime(ImageMetrics.DECODE_TIME, System.nanoTime() - decodeStart);
+            }
+        }
         
         if (bitmap == null) {
-        	Log.d(LOG_TAG, "null bitmap");
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
         	if (callback != null) {
                 callback.onNullBitmap();
             }
+            return;
         }
-        
+
+        metrics.increment(ImageMetrics.NETWORK_SUCCESS);
         addBitmapToCache(urlString, bitmap);
     }
 
-    private BitmapDrawable downloadDrawable(final String urlString, ImageManagerOptions options) {
-        Bitmap bitmap = BitmapProcessor.decodeSampledBitmapFromUrl(urlString, options.requestedWidth, options.requestedHeight);
+    private Bitmap loadSampledBitmap(final String urlString, ImageManagerOptions options) {
+        return loadSampledBitmap(urlString, options.requestedWidth, options.requestedHeight);
+    }
+
+    /**
+    * Loads the image at the requested size, 0 keeps the original dimension. A downsampled bitmap
+    * is cached in memory under getSampledKey() and decoded from the original bytes, downloaded
+    * into the disk cache first if needed: the small copy is never cached under the URL, where a
+    * full size load would find it. Full size bitmaps are downloaded and cached under the URL.
+    */
+    private Bitmap loadSampledBitmap(final String urlString, int requestedWidth, int requestedHeight) {
+        final boolean sampled = requestedWidth > 0 || requestedHeight > 0;
+        Bitmap bitmap;
+        if (sampled && diskCache != null) {
+            final String key = getDiskCacheKey(urlString);
+            if (!diskCache.containsKey(key) && !downloadToDiskCache(diskCache, urlString, key)) {
+                return null;
+            }
+            bitmap = decodeSampledBitmapFromDiskCache(urlString, requestedWidth, requestedHeight);
+            if (bitmap != null) {
+                memoryCache.put(getSampledKey(urlString, requestedWidth, requestedHeight), bitmap);
+            }
+            return bitmap;
+        }
 
-        addBitmapToCache(urlString, bitmap);
+        // Records the download and the decode times
+        bitmap = BitmapProcessor.decodeSampledBitmapFromUrl(urlString, requestedWidth, requestedHeight, metrics);
 
-        return new BitmapDrawable(context.getResources(), bitmap);
+        if (bitmap == null) {
+            metrics.increment(ImageMetrics.NETWORK_FAILURE);
+            return null;
+        }
+
+        metrics.increment(ImageMetrics.NETWORK_SUCCESS);
+        if (sampled) {
+            // No disk cache to keep the original in
+            memoryCache.put(getSampledKey(urlString, requestedWidth, requestedHeight), bitmap);
+        } else {
+            addBitmapToCache(urlString, bitmap);
+        }
+
+        return bitmap;
+    }
+
+    /**
+    * Holds queued jobs and the delivery of finished images to their views, e.g. during a fling.
+    * Jobs already running complete. Must be called on the UI thread.
+    */
+    public void pause() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        downloadThreadPool.pause();
+    }
+
+    /**
+    * Releases the queued jobs and delivers the images that finished while paused.
+    * Must be called on the UI thread.
+    */
+    public void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        downloadThreadPool.resume();
+
+        for (int i = 0; i < pausedDeliveries.size(); i++) {
+            pausedDeliveries.get(i).sendToTarget();
+        }
+        pausedDeliveries.clear();
+    }
+
+    public boolean isPaused() {
+        return paused;
     }
 
     public void setCallback(ImageManagerCallback callback) {
         this.callback = callback;
     }
 
+    private abstract static class ViewJob extends ImageJob {
+        private final String urlString;
+        private final int position;
+
+        private ViewJob(String urlString, int position, int priority) {
+            super(priority);
+            this.urlString = urlString;
+            this.position = position;
+        }
+    }
+
     /**
 * Drawable Handler inner class
 *
 */
     private static final class ImageManagerHandler extends Handler {
-        private final ImageView imageView;
+        // Weak so the job, the value of pendingViewJobs, does not keep its weak key alive
+        private final WeakReference<ImageView> imageView;
         private final String url;
         private final ImageManagerOptions options;
         private final WeakReference<ImageManager> imageManager;
+        private ViewJob job;
 
         private ImageManagerHandler(ImageManager imageManager, ImageView imageView, String url, ImageManagerOptions options) {
             this.imageManager = new WeakReference<ImageManager>(imageManager);
-            this.imageView = imageView;
+            this.imageView = new WeakReference<ImageView>(imageView);
             this.url = url;
             this.options = options;
         }
 
         @Override
         public void handleMessage(Message msg) {
+            final ImageManager manager = imageManager.get();
+            final ImageView imageView = this.imageView.get();
+            if (manager == null || imageView == null) {
+                return;
+            }
+            if (manager.paused) {
+                manager.pausedDeliveries.add(Message.obtain(msg));
+                return;
+            }
+            if (manager.pendingViewJobs.get(imageView) == job) {
+                manager.pendingViewJobs.remove(imageView);
+            }
+
             String tag = imageViews.get(imageView);
 
             if (tag != null && tag.equals(url)) {
                 if (msg.obj != null) {
-                    imageManager.get().setImageDrawable(imageView, (BitmapDrawable) msg.obj, options);
+                    manager.setImageBitmap(imageView, (Bitmap) msg.obj, options);
                 } else {
                     imageView.setImageResource(placeholder);
                     Log.e(LOG_TAG, "failed " + url);
@@ -0,0 +1,159 @@
+package com.derektrauger.library.imaging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+* Low overhead instrumentation of the imaging pipeline: counters and latency histograms.
+* Recording is lock free and allocation free, so it can stay on in production and on the hot
+* path. Read the values through snapshot(), which copies them into an immutable Snapshot.
+*
+* Latencies are kept in power of two microsecond buckets, percentiles are therefore accurate to
+* within a factor of two, which is enough to size caches and thread pools.
+*/
+public class ImageMetrics {
+
+    /* Counters */
+    public static final int MEMORY_HIT = 0;
+    public static final int MEMORY_MISS = 1;
+    public static final int DISK_HIT = 2;
+    public static final int DISK_MISS = 3;
+    public static final int NETWORK_SUCCESS = 4;
+    public static final int NETWORK_FAILURE = 5;
+    public static final int BYTES_DOWNLOADED = 6;
+    private static final int COUNTER_COUNT = 7;
+
+    /* Timers */
+    // Decoding a bitmap, read from the disk cache or downloaded
+    public static final int DECODE_TIME = 0;
+    // Downloading a bitmap from the network, without decoding it
+    public static final int NETWORK_TIME = 1;
+    public static final int DISK_WRITE_TIME = 2;
+    // Time a job waited in the thread pool queue, including time spent paused
+    public static final int QUEUE_WAIT_TIME = 3;
+    private static final int TIMER_COUNT = 4;
+
+    private static final int BUCKET_COUNT = 32;
+    // Per timer: count, sum, max, then the buckets
+    private static final int TIMER_STRIDE = 3 + BUCKET_COUNT;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+    private final AtomicLongArray timers = new AtomicLongArray(TIMER_COUNT * TIMER_STRIDE);
+
+    public void increment(int counter) {
+        counters.incrementAndGet(counter);
+    }
+
+    public void add(int counter, long value) {
+        counters.addAndGet(counter, value);
+    }
+
+    /**
+    * Records a duration measured with System.nanoTime().
+    */
+    public void recordTime(int timer, long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+        final int base = timer * TIMER_STRIDE;
+
+        timers.incrementAndGet(base);
+        timers.addAndGet(base + 1, micros);
+        long max;
+        while ((max = timers.get(base + 2)) < micros && !timers.compareAndSet(base + 2, max, micros)) {
+            // Lost the race against a concurrent update, retry
+        }
+        timers.incrementAndGet(base + 3 + getBucket(micros));
+    }
+
+    // Bucket i holds values in [2^(i-1), 2^i) microseconds, bucket 0 holds 0
+    private static int getBucket(long micros) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters.set(i, 0);
+        }
+        for (int i = 0; i < TIMER_COUNT * TIMER_STRIDE; i++) {
+            timers.set(i, 0);
+        }
+    }
+
+    /**
+    * Copies the current values. Values recorded concurrently may or may not be included.
+    *
+    * @param residentBitmapBytes
+    * Bytes of bitmaps currently held by the memory cache
+    */
+    public Snapshot snapshot(long residentBitmapBytes) {
+        final long[] counterValues = new long[COUNTER_COUNT];
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counterValues[i] = counters.get(i);
+        }
+        final long[] timerValues = new long[TIMER_COUNT * TIMER_STRIDE];
+        for (int i = 0; i < timerValues.length; i++) {
+            timerValues[i] = timers.get(i);
+        }
+        return new Snapshot(counterValues, timerValues, residentBitmapBytes);
+    }
+
+    public static final class Snapshot {
+        private final long[] counters;
+        private final long[] timers;
+        private final long residentBitmapBytes;
+
+        private Snapshot(long[] counters, long[] timers, long residentBitmapBytes) {
+            this.counters = counters;
+            this.timers = timers;
+            this.residentBitmapBytes = residentBitmapBytes;
+        }
+
+        public long getCount(int counter) {
+            return counters[counter];
+        }
+
+        public long getResidentBitmapBytes() {
+            return residentBitmapBytes;
+        }
+
+        /**
+        * Returns hits / (hits + misses) of the given counters, or 0 if there were none.
+        */
+        public double getHitRatio(int hitCounter, int missCounter) {
+            final long total = counters[hitCounter] + counters[missCounter];
+            return total == 0 ? 0 : (double) counters[hitCounter] / total;
+        }
+
+        public long getTimerCount(int timer) {
+            return timers[timer * TIMER_STRIDE];
+        }
+
+        public long getMeanMicros(int timer) {
+            final long count = getTimerCount(timer);
+            return count == 0 ? 0 : timers[timer * TIMER_STRIDE + 1] / count;
+        }
+
+        public long getMaxMicros(int timer) {
+            return timers[timer * TIMER_STRIDE + 2];
+        }
+
+        /**
+        * Returns the upper bound of the bucket holding the given percentile, between 0 and 100.
+        */
+        public long getPercentileMicros(int timer, double percentile) {
+            final int base = timer * TIMER_STRIDE;
+            final long count = timers[base];
+            if (count == 0) {
+                return 0;
+            }
+
+            final long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += timers[base + 3 + i];
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 0 : 1L << i, timers[base + 2]);
+                }
+            }
+            return timers[base + 2];
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.derektrauger.library.imaging;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+* ThreadPoolExecutor over a priority queue whose jobs can be held in the queue. While paused the
+* workers do not take jobs off the queue, so held jobs can still be removed or reprioritized and
+* run in queue order once resumed. Jobs already running are not interrupted.
+*/
+class PausableThreadPoolExecutor extends ThreadPoolExecutor {
+
+    PausableThreadPoolExecutor(int poolSize) {
+        super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new PausableQueue());
+        // A job submitted before all the workers are started would be handed to a new worker
+        // directly, bypassing the queue and the pause
+        prestartAllCoreThreads();
+    }
+
+    void pause() {
+        ((PausableQueue) getQueue()).pause();
+    }
+
+    void resume() {
+        ((PausableQueue) getQueue()).resume();
+    }
+
+    private static final class PausableQueue extends PriorityBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReentrantLock pauseLock = new ReentrantLock();
+        private final Condition unpaused = pauseLock.newCondition();
+        private boolean paused;
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            while (true) {
+                awaitResumed();
+                final Runnable job = super.take();
+                if (!requeueIfPaused(job)) {
+                    return job;
+                }
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (true) {
+                if (!awaitResumed(deadline - System.nanoTime())) {
+                    return null;
+                }
+                final Runnable job = super.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (job == null || !requeueIfPaused(job)) {
+                    return job;
+                }
+            }
+        }
+
+        /**
+        * A worker already waiting in take() when the pool was paused gets the next job, it goes back
+        * into the queue in the same place.
+        */
+        private boolean requeueIfPaused(Runnable job) {
+            pauseLock.lock();
+            try {
+                if (!paused) {
+                    return false;
+                }
+            } finally {
+                pauseLock.unlock();
+            }
+            offer(job);
+            return true;
+        }
+
+        private void awaitResumed() throws InterruptedException {
+            pauseLock.lock();
+            try {
+                while (paused) {
+                    unpaused.await();
+                }
+            } finally {
+                pauseLock.unlock();
+            }
+        }
+
+        private boolean awaitResumed(long nanos) throws InterruptedException {
+            pauseLock.lock();
+            try {
+                while (paused) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = unpaused.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                pauseLock.unlock();
+            }
+        }
+
+        void pause() {
+            pauseLock.lock();
+            try {
+                paused = true;
+            } finally {
+                pauseLock.unlock();
+            }
+        }
+
+        void resume() {
+            pauseLock.lock();
+            try {
+                paused = false;
+                unpaused.signalAll();
+            } finally {
+                pauseLock.unlock();
+            }
+        }
+    }
+}
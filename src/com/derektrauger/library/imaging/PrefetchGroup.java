@@ -0,0 +1,80 @@
+package com.derektrauger.library.imaging;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Handle on a batch of prefetches queued by ImageManager.prefetch. Tracks the budget shared by
+* the batch and cancels all of its queued jobs at once.
+*/
+public class PrefetchGroup {
+
+    private final ThreadPoolExecutor executor;
+    // Jobs not run yet, removed as they complete
+    private final Set<ImageJob> jobs = new HashSet<ImageJob>();
+    private final int maxCount;
+    private final long maxBytes;
+    private final AtomicInteger fetchedCount = new AtomicInteger();
+    private final AtomicLong fetchedBytes = new AtomicLong();
+    private volatile boolean cancelled;
+
+    PrefetchGroup(ThreadPoolExecutor executor, int maxCount, long maxBytes) {
+        this.executor = executor;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void add(ImageJob job) {
+        jobs.add(job);
+    }
+
+    synchronized void remove(ImageJob job) {
+        jobs.remove(job);
+    }
+
+    /**
+    * The budget is checked before each fetch, concurrent fetches may overshoot it by at most the
+    * size of the thread pool.
+    */
+    boolean hasBudget() {
+        return !cancelled
+                && (maxCount <= 0 || fetchedCount.get() < maxCount)
+                && (maxBytes <= 0 || fetchedBytes.get() < maxBytes);
+    }
+
+    /**
+    * @param bytes
+    * Size of the decoded bitmap, the unit of maxBytes
+    */
+    void onFetched(long bytes) {
+        fetchedCount.incrementAndGet();
+        fetchedBytes.addAndGet(bytes);
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount.get();
+    }
+
+    public long getFetchedBytes() {
+        return fetchedBytes.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+    * Removes the queued prefetches of this group. Fetches already running are allowed to finish.
+    */
+    public synchronized void cancel() {
+        cancelled = true;
+        for (ImageJob job : jobs) {
+            job.cancel();
+            executor.remove(job);
+        }
+        jobs.clear();
+    }
+}
@@ -0,0 +1,155 @@
+package com.derektrauger.library.imaging;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+
+/**
+* Draws a bitmap with rounded corners or as a circle by filling the shape with a BitmapShader.
+* Unlike BitmapProcessor.getRoundedCorners no second bitmap is rasterized; the original pixels are
+* clipped at draw time. The shape is only rebuilt when the bounds change.
+*/
+public class RoundedDrawable extends Drawable {
+
+    private final Bitmap bitmap;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final BitmapShader shader;
+    private final Matrix shaderMatrix = new Matrix();
+    private final RectF drawRect = new RectF();
+    private final Path path = new Path();
+    private final float[] radii = new float[8];
+    private final int bitmapWidth;
+    private final int bitmapHeight;
+    private boolean circle;
+
+    public RoundedDrawable(Bitmap bitmap, float radius) {
+        this(bitmap, radius, radius, radius, radius);
+    }
+
+    /**
+    * @param topLeft
+    * Radius of the top left corner, in pixels
+    * @param topRight
+    * Radius of the top right corner, in pixels
+    * @param bottomRight
+    * Radius of the bottom right corner, in pixels
+    * @param bottomLeft
+    * Radius of the bottom left corner, in pixels
+    */
+    public RoundedDrawable(Bitmap bitmap, float topLeft, float topRight, float bottomRight, float bottomLeft) {
+        this.bitmap = bitmap;
+        this.bitmapWidth = bitmap.getWidth();
+        this.bitmapHeight = bitmap.getHeight();
+        this.shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        this.paint.setShader(shader);
+        setCornerRadii(topLeft, topRight, bottomRight, bottomLeft);
+    }
+
+    /**
+    * Returns a drawable that crops the bitmap to the largest centered circle.
+    */
+    public static RoundedDrawable circle(Bitmap bitmap) {
+        RoundedDrawable drawable = new RoundedDrawable(bitmap, 0);
+        drawable.circle = true;
+        return drawable;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public boolean isCircle() {
+        return circle;
+    }
+
+    /**
+    * Crops the bitmap to the largest centered circle from now on.
+    */
+    public void setCircle() {
+        circle = true;
+        updateShape(getBounds());
+        invalidateSelf();
+    }
+
+    public void setCornerRadii(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+        if (!circle && radii[0] == topLeft && radii[2] == topRight && radii[4] == bottomRight && radii[6] == bottomLeft) {
+            // Same shape, no need to rebuild the path and redraw
+            return;
+        }
+        radii[0] = radii[1] = topLeft;
+        radii[2] = radii[3] = topRight;
+        radii[4] = radii[5] = bottomRight;
+        radii[6] = radii[7] = bottomLeft;
+        circle = false;
+        updateShape(getBounds());
+        invalidateSelf();
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        updateShape(bounds);
+    }
+
+    private void updateShape(Rect bounds) {
+        drawRect.set(bounds);
+        path.reset();
+
+        if (circle) {
+            // Center-crop the bitmap into the square inscribing the circle
+            final float size = Math.min(drawRect.width(), drawRect.height());
+            drawRect.inset((drawRect.width() - size) / 2f, (drawRect.height() - size) / 2f);
+            final float scale = size / Math.min(bitmapWidth, bitmapHeight);
+            shaderMatrix.setScale(scale, scale);
+            shaderMatrix.postTranslate(drawRect.centerX() - bitmapWidth * scale / 2f, drawRect.centerY() - bitmapHeight * scale / 2f);
+            path.addCircle(drawRect.centerX(), drawRect.centerY(), size / 2f, Path.Direction.CW);
+        } else {
+            shaderMatrix.setScale(drawRect.width() / bitmapWidth, drawRect.height() / bitmapHeight);
+            shaderMatrix.postTranslate(drawRect.left, drawRect.top);
+            path.addRoundRect(drawRect, radii, Path.Direction.CW);
+        }
+
+        shader.setLocalMatrix(shaderMatrix);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawPath(path, paint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return bitmapWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return bitmapHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        paint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,373 @@
+package com.derektrauger.library.imaging;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.derektrauger.library.Utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+* Displays very large images (floor plans, scanned maps) without decoding them as a whole.
+* The source is downloaded once into the DiskLruImageCache and read through a BitmapRegionDecoder;
+* only the tiles intersecting the visible region are decoded, at the sample size matching the
+* current scale, on background threads. Decoded tiles are kept in a small LRU bounded in bytes, so
+* memory use does not depend on the size of the source image. The tiles of the visible region are
+* held outside the LRU until they scroll out of view, a viewport needing more tiles than the cache
+* holds is drawn at the cost of the extra memory instead of evicting and decoding its own tiles
+* again and again.
+*
+* Usage: call open() once, then from the hosting View's onDraw apply the pan/zoom transform to the
+* canvas so it draws in source image pixels and call drawVisibleTiles(). Invalidate the view from
+* TiledImageCallback.onTileLoaded(). Call recycle() when the view is detached.
+*
+* Requires Gingerbread MR1 (API 10) or higher, check isSupported() first.
+*/
+@SuppressLint("NewApi")
+public class TiledImageLoader {
+
+    private static final String LOG_TAG = "TiledImageLoader";
+    public static final int TILE_SIZE = 256;
+    private static final int DEFAULT_TILE_CACHE_SIZE = 1024 * 1024 * 8; // 8MB
+    private static final int DECODE_THREADS = 2;
+
+    private final String urlString;
+    private final DiskLruImageCache diskCache;
+    private final ExecutorService decodeThreadPool;
+    private final LruCache<Long, Bitmap> tileCache;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Rect tileRect = new Rect();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Only touched on the UI thread
+    private final Map<Long, PendingTile> pendingTiles = new HashMap<Long, PendingTile>();
+    // Tiles drawn by the last pass, pinned so the LRU cannot evict them while they are visible
+    private Map<Long, Bitmap> visibleTiles = new HashMap<Long, Bitmap>();
+    // Tiles of the pass being drawn, swapped with visibleTiles at the end of the pass
+    private Map<Long, Bitmap> drawnTiles = new HashMap<Long, Bitmap>();
+    private int drawPass;
+
+    private volatile BitmapRegionDecoder decoder;
+    private volatile InputStream sourceStream;
+    private volatile boolean recycled;
+    private int imageWidth;
+    private int imageHeight;
+
+    private TiledImageCallback callback;
+
+    public interface TiledImageCallback {
+        void onSourceReady(int width, int height);
+        void onTileLoaded();
+        void onSourceFailed(String urlString);
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
+    public TiledImageLoader(DiskLruImageCache diskCache, String urlString) {
+        this(diskCache, urlString, DEFAULT_TILE_CACHE_SIZE);
+    }
+
+    public TiledImageLoader(DiskLruImageCache diskCache, String urlString, int tileCacheSize) {
+        this.diskCache = diskCache;
+        this.urlString = urlString;
+        this.decodeThreadPool = Executors.newFixedThreadPool(DECODE_THREADS);
+        this.tileCache = new LruCache<Long, Bitmap>(tileCacheSize) {
+            @Override
+            protected int sizeOf(final Long key, final Bitmap bitmap) {
+                return Utils.getSizeInBytes(bitmap);
+            }
+        };
+    }
+
+    public void setCallback(TiledImageCallback callback) {
+        this.callback = callback;
+    }
+
+    public int getWidth() {
+        return imageWidth;
+    }
+
+    public int getHeight() {
+        return imageHeight;
+    }
+
+    public boolean isReady() {
+        return decoder != null;
+    }
+
+    /**
+    * Caches the source on disk if needed and opens the region decoder in the background.
+    * TiledImageCallback.onSourceReady is called on the UI thread once tiles can be drawn.
+    */
+    public void open() {
+        decodeThreadPool.submit(new Runnable() {
+            public void run() {
+                final boolean opened = openDecoder();
+
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (callback == null || recycled) {
+                            return;
+                        }
+                        if (opened) {
+                            callback.onSourceReady(imageWidth, imageHeight);
+                        } else {
+                            callback.onSourceFailed(urlString);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean openDecoder() {
+        final String key = ImageManager.getDiskCacheKey(urlString);
+
+        InputStream stream = diskCache.getInputStream(key);
+        if (stream == null) {
+            ImageManager.downloadToDiskCache(diskCache, urlString, key);
+            stream = diskCache.getInputStream(key);
+        }
+        if (stream == null) {
+            return false;
+        }
+
+        try {
+            // The file descriptor based decoder memory maps the source instead of copying it to the heap,
+            // the stream has to stay open for as long as the decoder is in use
+            final BitmapRegionDecoder regionDecoder;
+            if (stream instanceof FileInputStream) {
+                regionDecoder = BitmapRegionDecoder.newInstance(((FileInputStream) stream).getFD(), true);
+            } else {
+                regionDecoder = BitmapRegionDecoder.newInstance(stream, true);
+            }
+            imageWidth = regionDecoder.getWidth();
+            imageHeight = regionDecoder.getHeight();
+            sourceStream = stream;
+            decoder = regionDecoder;
+            if (recycled) {
+                recycle();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to open region decoder: " + urlString, e);
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return false;
+    }
+
+    /**
+    * Returns the largest power of two sample size that still provides at least one source pixel
+    * per screen pixel at the given scale (screen pixels per source pixel).
+    */
+    public static int getSampleSize(float scale) {
+        return getSampleSize(scale, Integer.MAX_VALUE);
+    }
+
+    /**
+    * Same as getSampleSize(float), but never more than the longest side of the image: a single
+    * pixel already covers it.
+    */
+    public static int getSampleSize(float scale, int imageSize) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Invalid scale " + scale);
+        }
+        int sampleSize = 1;
+        while (sampleSize <= imageSize / 2 && sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+    * Draws the cached tiles intersecting the visible region and queues decoding of the missing ones.
+    * Queued tiles that are no longer visible are cancelled. Must be called on the UI thread.
+    *
+    * @param canvas
+    * Canvas transformed so that it draws in source image pixels
+    * @param visibleRegion
+    * Visible part of the source image, in source image pixels
+    * @param scale
+    * Current scale, in screen pixels per source pixel
+    */
+    public void drawVisibleTiles(Canvas canvas, Rect visibleRegion, float scale) {
+        if (decoder == null || recycled || !(scale > 0)) {
+            // Nothing shown at a scale of zero
+            return;
+        }
+
+        final int sampleSize = getSampleSize(scale, Math.max(imageWidth, imageHeight));
+        final int tileExtent = TILE_SIZE * sampleSize;
+        final int firstCol = Math.max(0, visibleRegion.left / tileExtent);
+        final int firstRow = Math.max(0, visibleRegion.top / tileExtent);
+        final int lastCol = Math.min((imageWidth - 1) / tileExtent, (visibleRegion.right - 1) / tileExtent);
+        final int lastRow = Math.min((imageHeight - 1) / tileExtent, (visibleRegion.bottom - 1) / tileExtent);
+
+        drawPass++;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                setTileRect(col, row, tileExtent);
+                final Long key = getTileKey(col, row, sampleSize);
+                Bitmap tile = visibleTiles.get(key);
+                if (tile == null) {
+                    tile = tileCache.get(key);
+                }
+
+                if (tile != null) {
+                    drawnTiles.put(key, tile);
+                    canvas.drawBitmap(tile, null, tileRect, paint);
+                } else {
+                    requestTile(key, sampleSize);
+                }
+            }
+        }
+
+        // Tiles that scrolled out of view are left to the LRU
+        final Map<Long, Bitmap> drawn = drawnTiles;
+        drawnTiles = visibleTiles;
+        drawnTiles.clear();
+        visibleTiles = drawn;
+
+        cancelInvisibleTiles();
+    }
+
+    private void setTileRect(int col, int row, int tileExtent) {
+        tileRect.set(col * tileExtent, row * tileExtent,
+                Math.min((col + 1) * tileExtent, imageWidth), Math.min((row + 1) * tileExtent, imageHeight));
+    }
+
+    private static Long getTileKey(int col, int row, int sampleSize) {
+        return Long.valueOf(((long) Integer.numberOfTrailingZeros(sampleSize) << 56) | ((long) row << 28) | col);
+    }
+
+    private void requestTile(final Long key, final int sampleSize) {
+        final PendingTile pending = pendingTiles.get(key);
+        if (pending != null) {
+            pending.drawPass = drawPass;
+            return;
+        }
+
+        final Rect region = new Rect(tileRect);
+        final Future<?> future = decodeThreadPool.submit(new Runnable() {
+            public void run() {
+                final Bitmap tile = decodeTile(region, sampleSize);
+
+                handler.post(new Runnable() {
+                    public void run() {
+                        final boolean visible = pendingTiles.remove(key) != null;
+                        if (tile == null || recycled) {
+                            return;
+                        }
+                        tileCache.put(key, tile);
+                        if (visible) {
+                            // Requested by the last pass and not cancelled since, so still on screen
+                            visibleTiles.put(key, tile);
+                        }
+                        if (callback != null) {
+                            callback.onTileLoaded();
+                        }
+                    }
+                });
+            }
+        });
+        pendingTiles.put(key, new PendingTile(future, drawPass));
+    }
+
+    private Bitmap decodeTile(Rect region, int sampleSize) {
+        final BitmapRegionDecoder regionDecoder = decoder;
+        if (regionDecoder == null || recycled) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+
+        try {
+            return regionDecoder.decodeRegion(region, options);
+        } catch (IllegalStateException e) {
+            // Decoder was recycled while the tile was queued
+            return null;
+        }
+    }
+
+    private void cancelInvisibleTiles() {
+        final Iterator<PendingTile> iterator = pendingTiles.values().iterator();
+        while (iterator.hasNext()) {
+            final PendingTile pending = iterator.next();
+            if (pending.drawPass != drawPass) {
+                pending.future.cancel(false);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+    * Cancels queued tiles, drops the decoded tiles and releases the decoder. The loader cannot be
+    * used afterwards.
+    */
+    public void recycle() {
+        recycled = true;
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            for (PendingTile pending : pendingTiles.values()) {
+                pending.future.cancel(false);
+            }
+            pendingTiles.clear();
+            visibleTiles.clear();
+            drawnTiles.clear();
+            tileCache.evictAll();
+        }
+        decodeThreadPool.shutdown();
+
+        final BitmapRegionDecoder regionDecoder = decoder;
+        decoder = null;
+        if (regionDecoder != null) {
+            regionDecoder.recycle();
+        }
+
+        final InputStream stream = sourceStream;
+        sourceStream = null;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class PendingTile {
+        private final Future<?> future;
+        private int drawPass;
+
+        private PendingTile(Future<?> future, int drawPass) {
+            this.future = future;
+            this.drawPass = drawPass;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+
+/**
+* Blurs the bitmap with three passes of a box blur, which approximates a gaussian blur.
+* Runs in plain Java so it works on every API level, the cost is linear in the pixel count and
+* independent of the radius. Downsample before blurring large images.
+*
+* Translucent pixels are blurred premultiplied by their alpha, otherwise the color of fully
+* transparent pixels, usually black, bleeds into the edges as a dark halo.
+*/
+public class BlurTransformation implements Transformation {
+
+    private static final int PASSES = 3;
+
+    private final int radius;
+
+    public BlurTransformation(int radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        if (radius < 1) {
+            return source;
+        }
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        int[] buffer = new int[width * height];
+        source.getPixels(pixels, 0, width, 0, 0, width, height);
+        final boolean alpha = source.hasAlpha();
+        if (alpha) {
+            premultiply(pixels);
+        }
+
+        for (int i = 0; i < PASSES; i++) {
+            boxBlur(pixels, buffer, width, height, radius, true);
+            boxBlur(buffer, pixels, height, width, radius, false);
+        }
+
+        if (alpha) {
+            unpremultiply(pixels);
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+    * Blurs each line of the input with a running sum. Horizontal passes read rows of width pixels,
+    * vertical passes read columns, so lineLength and lineCount are swapped by the caller.
+    */
+    private static void boxBlur(int[] in, int[] out, int lineLength, int lineCount, int radius, boolean horizontal) {
+        final int width = horizontal ? lineLength : lineCount;
+        final int step = horizontal ? 1 : width;
+        final int window = radius * 2 + 1;
+
+        for (int line = 0; line < lineCount; line++) {
+            final int start = horizontal ? line * width : line;
+            final int last = start + (lineLength - 1) * step;
+            int a = 0, r = 0, g = 0, b = 0;
+
+            // Prime the window, clamping at the edges
+            for (int i = -radius; i <= radius; i++) {
+                final int pixel = in[start + clamp(i, lineLength) * step];
+                a += pixel >>> 24;
+                r += (pixel >> 16) & 0xff;
+                g += (pixel >> 8) & 0xff;
+                b += pixel & 0xff;
+            }
+
+            for (int i = 0; i < lineLength; i++) {
+                out[start + i * step] = ((a / window) << 24) | ((r / window) << 16) | ((g / window) << 8) | (b / window);
+
+                final int outgoing = in[Math.max(start, start + (i - radius) * step)];
+                final int incoming = in[Math.min(last, start + (i + radius + 1) * step)];
+                a += (incoming >>> 24) - (outgoing >>> 24);
+                r += ((incoming >> 16) & 0xff) - ((outgoing >> 16) & 0xff);
+                g += ((incoming >> 8) & 0xff) - ((outgoing >> 8) & 0xff);
+                b += (incoming & 0xff) - (outgoing & 0xff);
+            }
+        }
+    }
+
+    /**
+    * Scales the color channels by the alpha, getPixels() returns unpremultiplied colors.
+    */
+    private static void premultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            final int pixel = pixels[i];
+            final int a = pixel >>> 24;
+            if (a == 0xff) {
+                continue;
+            }
+            final int r = (((pixel >> 16) & 0xff) * a + 127) / 255;
+            final int g = (((pixel >> 8) & 0xff) * a + 127) / 255;
+            final int b = ((pixel & 0xff) * a + 127) / 255;
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+    * Back to the unpremultiplied colors createBitmap() expects.
+    */
+    private static void unpremultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            final int pixel = pixels[i];
+            final int a = pixel >>> 24;
+            if (a == 0xff) {
+                continue;
+            }
+            if (a == 0) {
+                pixels[i] = 0;
+                continue;
+            }
+            final int r = Math.min(255, (((pixel >> 16) & 0xff) * 255 + a / 2) / a);
+            final int g = Math.min(255, (((pixel >> 8) & 0xff) * 255 + a / 2) / a);
+            final int b = Math.min(255, ((pixel & 0xff) * 255 + a / 2) / a);
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static int clamp(int index, int length) {
+        return index < 0 ? 0 : (index >= length ? length - 1 : index);
+    }
+
+    @Override
+    public String getKey() {
+        return "blur(" + radius + ")";
+    }
+}
@@ -0,0 +1,48 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+* Scales the bitmap so it covers the given size and crops the overflow, keeping the center.
+*/
+public class CenterCropTransformation implements Transformation {
+
+    private final int width;
+    private final int height;
+
+    public CenterCropTransformation(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        if (sourceWidth == width && sourceHeight == height) {
+            return source;
+        }
+
+        final float scale = Math.max((float) width / sourceWidth, (float) height / sourceHeight);
+        final Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((width - sourceWidth * scale) / 2f, (height - sourceHeight * scale) / 2f);
+
+        final Bitmap output = Bitmap.createBitmap(width, height, getConfig(source));
+        final Canvas canvas = new Canvas(output);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return output;
+    }
+
+    private static Bitmap.Config getConfig(Bitmap source) {
+        return source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+    }
+
+    @Override
+    public String getKey() {
+        return "centerCrop(" + width + "," + height + ")";
+    }
+}
@@ -0,0 +1,32 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+/**
+* Removes the color saturation of the bitmap.
+*/
+public class GrayscaleTransformation implements Transformation {
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        final ColorMatrix colorMatrix = new ColorMatrix();
+        colorMatrix.setSaturation(0);
+
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+
+        final Bitmap output = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(output);
+        canvas.drawBitmap(source, 0, 0, paint);
+        return output;
+    }
+
+    @Override
+    public String getKey() {
+        return "grayscale";
+    }
+}
@@ -0,0 +1,30 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+
+/**
+* Scales the bitmap to exactly the given size, ignoring the aspect ratio.
+*/
+public class ResizeTransformation implements Transformation {
+
+    private final int width;
+    private final int height;
+
+    public ResizeTransformation(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        return Bitmap.createScaledBitmap(source, width, height, true);
+    }
+
+    @Override
+    public String getKey() {
+        return "resize(" + width + "," + height + ")";
+    }
+}
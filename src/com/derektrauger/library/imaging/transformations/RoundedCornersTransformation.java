@@ -0,0 +1,37 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+/**
+* Bakes rounded corners into the bitmap. Meant for chains whose result is cached, for plain
+* display rounding prefer ImageManagerOptions.roundedCorners which clips at draw time.
+*/
+public class RoundedCornersTransformation implements Transformation {
+
+    private final float radius;
+
+    public RoundedCornersTransformation(float radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+
+        final Bitmap output = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(output);
+        canvas.drawRoundRect(new RectF(0, 0, source.getWidth(), source.getHeight()), radius, radius, paint);
+        return output;
+    }
+
+    @Override
+    public String getKey() {
+        return "roundedCorners(" + radius + ")";
+    }
+}
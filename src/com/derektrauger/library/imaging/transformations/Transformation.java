@@ -0,0 +1,22 @@
+package com.derektrauger.library.imaging.transformations;
+
+import android.graphics.Bitmap;
+
+/**
+* A bitmap transformation applied by ImageManager on its background threads.
+* Transformations are chained in the order they are added to ImageManagerOptions and the result
+* is cached under a key built from the URL, the requested size and the keys of the chain.
+*/
+public interface Transformation {
+
+    /**
+    * Returns the transformed bitmap, or the source itself if nothing has to change.
+    * Implementations must not recycle the source, it may be held by the cache.
+    */
+    Bitmap transform(Bitmap source);
+
+    /**
+    * Returns a key uniquely describing this transformation and its parameters.
+    */
+    String getKey();
+}